@@ -28,6 +28,7 @@ CREATE TABLE `tasks` (
   `user_id` bigint(20) DEFAULT NULL COMMENT '所属用户ID，NULL表示系统默认',
   `is_active` tinyint(1) DEFAULT '1' COMMENT '是否显示',
   `deleted` bit(1) NOT NULL,
+  `counted` bit(1) DEFAULT NULL,
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_user_name` (`user_id`,`name`)
 ) ENGINE=InnoDB AUTO_INCREMENT=3 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -39,7 +40,7 @@ CREATE TABLE `tasks` (
 
 LOCK TABLES `tasks` WRITE;
 /*!40000 ALTER TABLE `tasks` DISABLE KEYS */;
-INSERT INTO `tasks` VALUES (1,'离岗',NULL,1,_binary '\0'),(2,'玩手机',NULL,1,_binary '\0');
+INSERT INTO `tasks` VALUES (1,'离岗',NULL,1,_binary '\0',NULL),(2,'玩手机',NULL,1,_binary '\0',NULL);
 /*!40000 ALTER TABLE `tasks` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -58,8 +59,12 @@ CREATE TABLE `time_records` (
   `end_time` bigint(20) DEFAULT NULL,
   `duration` bigint(20) DEFAULT NULL,
   `record_date` varchar(20) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `record_day` date DEFAULT NULL,
+  `counted` bit(1) DEFAULT NULL,
   `created_at` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `idx_time_records_user_day_counted` (`user_id`,`record_day`,`counted`,`duration`),
+  KEY `idx_time_records_day_counted` (`record_day`,`counted`,`user_id`,`duration`)
 ) ENGINE=InnoDB AUTO_INCREMENT=20 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
@@ -69,7 +74,7 @@ CREATE TABLE `time_records` (
 
 LOCK TABLES `time_records` WRITE;
 /*!40000 ALTER TABLE `time_records` DISABLE KEYS */;
-INSERT INTO `time_records` VALUES (19,1,13,1765706595304,1765707087377,492073,'2025-12-14','2025-12-14 18:11:27');
+INSERT INTO `time_records` VALUES (19,1,13,1765706595304,1765707087377,492073,'2025-12-14','2025-12-14',NULL,'2025-12-14 18:11:27');
 /*!40000 ALTER TABLE `time_records` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -101,6 +106,139 @@ LOCK TABLES `users` WRITE;
 INSERT INTO `users` VALUES (1,'xltx','123456','2025-12-13 22:36:20',1,1765707087377);
 /*!40000 ALTER TABLE `users` ENABLE KEYS */;
 UNLOCK TABLES;
+--
+-- Table structure for table `user_task_order`
+--
+
+DROP TABLE IF EXISTS `user_task_order`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `user_task_order` (
+  `user_id` bigint(20) NOT NULL,
+  `task_id` bigint(20) NOT NULL,
+  `sort_rank` bigint(20) NOT NULL,
+  PRIMARY KEY (`user_id`,`task_id`),
+  KEY `idx_user_task_order_rank` (`user_id`,`sort_rank`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `write_behind_checkpoints`
+--
+
+DROP TABLE IF EXISTS `write_behind_checkpoints`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `write_behind_checkpoints` (
+  `node_id` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `last_seq` bigint(20) NOT NULL,
+  PRIMARY KEY (`node_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+--
+-- Table structure for table `job_lock`
+--
+
+DROP TABLE IF EXISTS `job_lock`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `job_lock` (
+  `name` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `locked_by` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `locked_at` bigint(20) NOT NULL,
+  `locked_until` bigint(20) NOT NULL,
+  PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `cluster_change_log`
+--
+
+DROP TABLE IF EXISTS `cluster_change_log`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `cluster_change_log` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `origin` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `event_type` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `payload` text COLLATE utf8mb4_unicode_ci NOT NULL,
+  `created_at` datetime(6) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_cluster_change_log_created` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `switch_requests`
+--
+
+DROP TABLE IF EXISTS `switch_requests`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `switch_requests` (
+  `user_id` bigint(20) NOT NULL,
+  `idempotency_key` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `task_id` bigint(20) DEFAULT NULL,
+  `start_time` bigint(20) NOT NULL,
+  `created_at` datetime(6) NOT NULL,
+  PRIMARY KEY (`user_id`,`idempotency_key`),
+  KEY `idx_switch_requests_created` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `user_day_totals`
+--
+
+DROP TABLE IF EXISTS `user_day_totals`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `user_day_totals` (
+  `generation` bigint(20) NOT NULL,
+  `user_id` bigint(20) NOT NULL,
+  `record_day` date NOT NULL,
+  `counted_duration` bigint(20) NOT NULL,
+  `total_duration` bigint(20) NOT NULL,
+  `record_count` int(11) NOT NULL,
+  PRIMARY KEY (`generation`,`user_id`,`record_day`),
+  KEY `idx_user_day_totals_day` (`generation`,`record_day`,`counted_duration`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `summary_generation`
+--
+
+DROP TABLE IF EXISTS `summary_generation`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `summary_generation` (
+  `name` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `generation` bigint(20) NOT NULL,
+  `through_day` date DEFAULT NULL,
+  `version` bigint(20) NOT NULL,
+  `completed_at` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `stream_tickets`
+--
+
+DROP TABLE IF EXISTS `stream_tickets`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `stream_tickets` (
+  `ticket` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `user_id` bigint(20) NOT NULL,
+  `expires_at` bigint(20) NOT NULL,
+  PRIMARY KEY (`ticket`),
+  KEY `idx_stream_tickets_expires` (`expires_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
@@ -0,0 +1,170 @@
+package com.example.examhelper.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closed-loop load test against a running backend: at each concurrency level every client
+// repeatedly lists tasks, loads the timeline and switches tasks as fast as it gets answers.
+// Run it with the same arguments against the default setup and the virtual-threads profile
+// to compare how throughput and latency hold up as concurrency grows.
+//
+//   mvn -f backend/benchmarks/pom.xml compile exec:exec \
+//       -Dbench.main=com.example.examhelper.load.ConcurrencyLoadTest \
+//       -Dbench.args="http://localhost:58081 50,200,800 30"
+//
+// Arguments: base URL, comma-separated concurrency levels, seconds per level. Each client
+// registers its own user (loadtest-<n>) on first use and logs in.
+public class ConcurrencyLoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final List<Client> clients = new ArrayList<>();
+
+    private record Client(long userId, String token, long[] taskIds) {
+    }
+
+    private ConcurrencyLoadTest(String baseUrl, int maxConcurrency) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(4, maxConcurrency / 8)))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:58081";
+        int[] levels = Arrays.stream((args.length > 1 ? args[1] : "50,200,800").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        ConcurrencyLoadTest test = new ConcurrencyLoadTest(baseUrl, Arrays.stream(levels).max().orElse(1));
+        test.prepareClients(Arrays.stream(levels).max().orElse(1));
+        System.out.printf("%-12s %10s %10s %10s %10s %10s %8s%n",
+                "concurrency", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "errors");
+        for (int level : levels) {
+            test.runLevel(level, seconds);
+        }
+        System.exit(0);
+    }
+
+    private void prepareClients(int count) throws Exception {
+        ExecutorService setup = Executors.newFixedThreadPool(16);
+        List<Future<Client>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String username = "loadtest-" + i;
+            futures.add(setup.submit(() -> login(username)));
+        }
+        for (Future<Client> future : futures) {
+            clients.add(future.get());
+        }
+        setup.shutdown();
+    }
+
+    private Client login(String username) throws Exception {
+        String credentials = MAPPER.writeValueAsString(new Credentials(username, "loadtest"));
+        post("/api/auth/register", credentials, null);
+        JsonNode user = MAPPER.readTree(post("/api/auth/login", credentials, null).body());
+        long userId = user.get("id").asLong();
+        String token = user.get("token").asText();
+
+        // A couple of own tasks to switch between
+        for (String name : List.of("load-a", "load-b")) {
+            post("/api/tasks", MAPPER.writeValueAsString(new NewTask(name, userId)), token);
+        }
+        JsonNode tasks = MAPPER.readTree(get("/api/tasks?userId=" + userId, token).body());
+        long[] taskIds = new long[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            taskIds[i] = tasks.get(i).get("id").asLong();
+        }
+        return new Client(userId, token, taskIds);
+    }
+
+    private record Credentials(String username, String password) {
+    }
+
+    private record NewTask(String name, Long userId) {
+    }
+
+    private void runLevel(int concurrency, int seconds) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong errors = new AtomicLong();
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            Client user = clients.get(i);
+            workers[i] = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                int step = 0;
+                while (running.get()) {
+                    long started = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = switch (step++ % 3) {
+                            case 0 -> get("/api/tasks?userId=" + user.userId(), user.token());
+                            case 1 -> get("/api/tasks/timeline?userId=" + user.userId(), user.token());
+                            default -> post("/api/tasks/switch", "{\"userId\":" + user.userId() + ",\"taskId\":"
+                                    + user.taskIds()[step % user.taskIds().length] + "}", user.token());
+                        };
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    if (count < samples.length) {
+                        samples[count++] = System.nanoTime() - started;
+                    }
+                }
+                latencies.add(Arrays.copyOf(samples, count));
+            });
+            workers[i].start();
+        }
+
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-12d %10d %10.1f %10.1f %10.1f %10.1f %8d%n",
+                concurrency, all.length, all.length / (double) seconds,
+                percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99), errors.get());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1_000_000.0;
+    }
+
+    private HttpResponse<String> get(String path, String token) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET(), token);
+    }
+
+    private HttpResponse<String> post(String path, String body, String token) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)), token);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder, String token) throws Exception {
+        if (token != null) {
+            builder.header("Authorization", token);
+        }
+        return client.send(builder.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.examhelper.repository;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The time_records queries behind charts and rankings, against an in-memory H2 database in
+// MySQL mode filled with synthetic users and records. Use it to compare query and index
+// changes relative to each other; absolute numbers say little about a real MySQL server.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeRecordQueryBenchmark {
+
+    private static final LocalDate LAST_DAY = LocalDate.of(2024, 3, 31);
+
+    @Param({"200"})
+    private int users;
+
+    @Param({"60"})
+    private int days;
+
+    @Param({"10"})
+    private int recordsPerUserDay;
+
+    private ConfigurableApplicationContext context;
+    private TimeRecordRepository timeRecordRepository;
+    private final Random random = new Random(42);
+
+    // Only the datasource, JPA and the repositories; no services or scheduled jobs
+    @EnableAutoConfiguration
+    @EntityScan("com.example.examhelper.model")
+    @EnableJpaRepositories("com.example.examhelper.repository")
+    static class RepositoryOnlyApplication {
+    }
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(RepositoryOnlyApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "spring.jpa.open-in-view=false",
+                        "logging.level.root=WARN")
+                .run();
+        timeRecordRepository = context.getBean(TimeRecordRepository.class);
+        populate(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private void populate(JdbcTemplate jdbcTemplate) {
+        List<Object[]> users = new ArrayList<>();
+        for (long id = 1; id <= this.users; id++) {
+            users.add(new Object[]{id, "user" + id, "pw", "USER", 8});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO users (id, username, password, role, daily_goal) VALUES (?, ?, ?, ?, ?)", users);
+
+        // Two global tasks (one of them not counted) and three tasks per user
+        List<Object[]> tasks = new ArrayList<>();
+        tasks.add(new Object[]{1L, "Leave", null, false, false});
+        tasks.add(new Object[]{2L, "Study", null, null, false});
+        for (long userId = 1; userId <= this.users; userId++) {
+            for (int i = 0; i < 3; i++) {
+                tasks.add(new Object[]{taskId(userId, i), "Task " + i, userId, i == 2 ? false : null, i != 2});
+            }
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO tasks (id, name, user_id, is_active, deleted, records_tag, counted) VALUES (?, ?, ?, TRUE, FALSE, ?, ?)",
+                tasks);
+
+        List<Object[]> records = new ArrayList<>();
+        for (int d = 0; d < days; d++) {
+            LocalDate day = LAST_DAY.minusDays(d);
+            long dayStart = day.atTime(4, 0).atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+            for (long userId = 1; userId <= this.users; userId++) {
+                for (int r = 0; r < recordsPerUserDay; r++) {
+                    int choice = random.nextInt(5);
+                    long taskId = choice < 2 ? choice + 1 : taskId(userId, choice - 2);
+                    long start = dayStart + random.nextInt(20 * 3600) * 1000L;
+                    long duration = (1 + random.nextInt(3600)) * 1000L;
+                    // Only the user's first two tasks count
+                    records.add(new Object[]{userId, taskId, start, start + duration, duration,
+                            day.toString(), Date.valueOf(day), choice >= 2 && choice < 4});
+                }
+            }
+            if (records.size() >= 10_000) {
+                insertRecords(jdbcTemplate, records);
+                records.clear();
+            }
+        }
+        insertRecords(jdbcTemplate, records);
+    }
+
+    private static void insertRecords(JdbcTemplate jdbcTemplate, List<Object[]> records) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO time_records (user_id, task_id, start_time, end_time, duration, record_date, record_day, counted) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", records);
+    }
+
+    private static long taskId(long userId, int index) {
+        return 100 + userId * 3 + index;
+    }
+
+    private long randomUser() {
+        return 1 + random.nextInt(users);
+    }
+
+    @Benchmark
+    public Object userDay() {
+        return timeRecordRepository.findByUserIdAndRecordDay(randomUser(), LAST_DAY);
+    }
+
+    @Benchmark
+    public Object userWeek() {
+        return timeRecordRepository.findByUserIdAndDateRange(randomUser(), LAST_DAY.minusDays(6), LAST_DAY);
+    }
+
+    @Benchmark
+    public Object userCountedTotalForMonth() {
+        return timeRecordRepository.getTotalDurationByUserIdAndDateRange(randomUser(), LAST_DAY.minusDays(29), LAST_DAY);
+    }
+
+    @Benchmark
+    public Object dailyRankingSource() {
+        return timeRecordRepository.findUserDurationsByDate(LAST_DAY);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.repository.TaskRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Full recompute of per-user daily totals over a synthetic time_records table (10M rows by
+// default) in an in-memory H2 database: the fork-join scan at several parallelism levels, the
+// whole run (counted-flag check, scan, writing and swapping in the summary generation), and a
+// single GROUP BY as the baseline. The default size needs a large heap (see jvmArgs); pass
+// -p rows=1000000 for a quick run.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms12g", "-Xmx12g"})
+public class AggregateRecomputeBenchmark {
+
+    @Param({"10000000"})
+    private long rows;
+
+    @Param({"2000"})
+    private int users;
+
+    @Param({"365"})
+    private int days;
+
+    @Param({"1", "4", "8"})
+    private int parallelism;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private AggregateRecompute recompute;
+    private long maxId;
+
+    // Only the datasource, JPA and the repositories; no services or scheduled jobs
+    @EnableAutoConfiguration
+    @EntityScan("com.example.examhelper.model")
+    @EnableJpaRepositories("com.example.examhelper.repository")
+    static class RepositoryOnlyApplication {
+    }
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        context = new SpringApplicationBuilder(RepositoryOnlyApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:recompute;MODE=MySQL;DATABASE_TO_LOWER=TRUE;LOCK_TIMEOUT=60000",
+                        "spring.datasource.hikari.maximum-pool-size=" + (parallelism + 2),
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "spring.jpa.open-in-view=false",
+                        "logging.level.root=WARN")
+                .run();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        populate();
+        maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM time_records", Long.class);
+        // The populated flags are consistent, so the checker never repairs or invalidates
+        CountedFlagChecker checker = new CountedFlagChecker(jdbcTemplate, context.getBean(TaskRepository.class),
+                event -> { }, null, null);
+        ServiceAssembler.setField(checker, "chunkSize", 10_000);
+        recompute = new AggregateRecompute(context.getBean(DataSource.class), jdbcTemplate,
+                context.getBean(TransactionTemplate.class), null, checker, 100_000, parallelism, 5000, 2000);
+        recompute.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // Two global tasks and three tasks per user; the global tasks and the third user task are
+    // not counted, and the records carry their task's flag.
+    // Records are generated in SQL; inserting 10M rows through JDBC batches takes minutes.
+    private void populate() {
+        List<Object[]> tasks = new ArrayList<>();
+        tasks.add(new Object[]{1L, "Leave", null, false, false});
+        tasks.add(new Object[]{2L, "Study", null, null, false});
+        for (long userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < 3; i++) {
+                tasks.add(new Object[]{taskId(userId, i), "Task " + i, userId, i == 2 ? false : null, i != 2});
+            }
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO tasks (id, name, user_id, is_active, deleted, records_tag, counted) " +
+                "VALUES (?, ?, ?, TRUE, FALSE, ?, ?)",
+                tasks);
+
+        jdbcTemplate.update(
+                "INSERT INTO time_records (user_id, task_id, start_time, end_time, duration, record_date, record_day, counted) " +
+                "SELECT u, CASE WHEN MOD(x, 5) < 2 THEN MOD(x, 5) + 1 ELSE 100 + u * 3 + MOD(x, 5) - 2 END, " +
+                "s, s + d, d, CAST(DATEADD('DAY', -day_offset, DATE '2024-12-31') AS VARCHAR), " +
+                "DATEADD('DAY', -day_offset, DATE '2024-12-31'), MOD(x, 5) IN (2, 3) " +
+                "FROM (SELECT x, MOD(x, ?) + 1 AS u, MOD(x / ?, ?) AS day_offset, " +
+                "1735617600000 - MOD(x / ?, ?) * 86400000 + MOD(x * 7919, 72000) * 1000 AS s, " +
+                "(1 + MOD(x * 104729, 3600)) * 1000 AS d " +
+                "FROM SYSTEM_RANGE(1, ?) r(x))",
+                users, users, days, users, days, rows);
+    }
+
+    private static long taskId(long userId, int index) {
+        return 100 + userId * 3 + index;
+    }
+
+    @Benchmark
+    public int forkJoinScan() {
+        return recompute.aggregate(maxId, LocalDate.now()).size();
+    }
+
+    @Benchmark
+    public Object forkJoinScanAndSwap() {
+        recompute.recomputeAndSwap();
+        return recompute.progress();
+    }
+
+    // One query over the whole table, as a database-side aggregation would do it
+    @Benchmark
+    public int sqlGroupBy() {
+        if (parallelism != 1) {
+            return 0; // independent of the pool size; measured once
+        }
+        return jdbcTemplate.query(
+                "SELECT user_id, record_day, SUM(CASE WHEN counted THEN duration ELSE 0 END), SUM(duration), COUNT(*) " +
+                "FROM time_records GROUP BY user_id, record_day",
+                (rs, rowNum) -> rs.getLong(1)).size();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.examhelper.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-call cost of the date and duration helpers used on every record and ranking row
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final long[] timestamps = new long[SIZE];
+    private final long[] durations = new long[SIZE];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SIZE; i++) {
+            timestamps[i] = now - (long) (random.nextDouble() * 365L * 24 * 3600 * 1000);
+            durations[i] = (long) (random.nextDouble() * 12 * 3600 * 1000);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (SIZE - 1);
+        return next;
+    }
+
+    @Benchmark
+    public String logicalDate() {
+        return LogicalDay.of(timestamps[nextIndex()]);
+    }
+
+    @Benchmark
+    public long logicalDayStart() {
+        return LogicalDay.startOf(timestamps[nextIndex()]);
+    }
+
+    @Benchmark
+    public void formatDuration(Blackhole blackhole) {
+        blackhole.consume(TaskService.formatDuration(durations[nextIndex()]));
+    }
+}
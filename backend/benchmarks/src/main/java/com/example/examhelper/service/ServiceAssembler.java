@@ -0,0 +1,60 @@
+package com.example.examhelper.service;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds services the way Spring would, without a context: constructor arguments are
+// matched by type against the registered beans and left null when there is none, so adding
+// a dependency to a service does not break the benchmarks that construct it. Beans for
+// collaborators a benchmark actually calls must be registered; the rest stay null.
+final class ServiceAssembler {
+
+    private final List<Object> beans = new ArrayList<>();
+
+    ServiceAssembler with(Object... beans) {
+        this.beans.addAll(List.of(beans));
+        return this;
+    }
+
+    // Creates the service and registers it, so later services can depend on it
+    <T> T create(Class<T> type) throws ReflectiveOperationException {
+        Constructor<?>[] constructors = type.getConstructors();
+        if (constructors.length != 1) {
+            throw new IllegalArgumentException(type.getSimpleName() + " has " + constructors.length + " public constructors");
+        }
+        Constructor<?> constructor = constructors[0];
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Object[] args = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            args[i] = find(parameterTypes[i]);
+        }
+        T service = type.cast(constructor.newInstance(args));
+        beans.add(service);
+        return service;
+    }
+
+    // Stands in for an @Value field that has no default in a constructor-less benchmark
+    static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private Object find(Class<?> type) {
+        Object match = null;
+        for (Object bean : beans) {
+            if (type.isInstance(bean)) {
+                if (match != null) {
+                    throw new IllegalStateException("more than one bean of type " + type.getSimpleName());
+                }
+                match = bean;
+            }
+        }
+        if (match == null && type.isPrimitive()) {
+            throw new IllegalStateException("no value for " + type);
+        }
+        return match;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.dto.TimelineData;
+import com.example.examhelper.model.Task;
+import com.example.examhelper.model.TimeRecord;
+import com.example.examhelper.model.User;
+import com.example.examhelper.repository.TaskRepository;
+import com.example.examhelper.repository.TimeRecordRepository;
+import com.example.examhelper.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Task list ordering and timeline assembly on synthetic data. Repositories are in-memory
+// stubs, so the numbers cover only the work TaskService does on top of its queries.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskServiceBenchmark {
+
+    private static final Long USER_ID = 1L;
+    private static final String DATE = "2024-03-01";
+
+    @Param({"20", "200", "2000"})
+    private int taskCount;
+
+    @Param({"50", "1000", "5000"})
+    private int recordsPerDay;
+
+    private TaskService taskService;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Random random = new Random(42);
+        List<Task> tasks = new ArrayList<>();
+        for (long id = 1; id <= taskCount; id++) {
+            Task task = new Task();
+            task.setId(id);
+            task.setName("Task " + id);
+            // A few global tasks, the rest belong to the user
+            task.setUserId(id <= 5 ? null : USER_ID);
+            task.setRecordsTag(id % 7 == 0 ? Boolean.FALSE : null);
+            tasks.add(task);
+        }
+
+        // The query returns the tasks already in display order
+        List<Task> ordered = new ArrayList<>(tasks);
+        Collections.shuffle(ordered, random);
+        User user = new User();
+        user.setId(USER_ID);
+        user.setUsername("bench");
+
+        long dayStart = LogicalDay.startOf(LocalDate.parse(DATE).atTime(12, 0)
+                .atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli());
+        List<TimeRecord> records = new ArrayList<>();
+        for (int i = 0; i < recordsPerDay; i++) {
+            TimeRecord record = new TimeRecord();
+            record.setId((long) i + 1);
+            record.setUserId(USER_ID);
+            record.setTaskId(tasks.get(random.nextInt(tasks.size())).getId());
+            long start = dayStart + random.nextInt(20 * 3600) * 1000L;
+            long duration = (1 + random.nextInt(3600)) * 1000L;
+            record.setStartTime(start);
+            record.setEndTime(start + duration);
+            record.setDuration(duration);
+            record.setRecordDate(DATE);
+            record.setRecordDay(LocalDate.parse(DATE));
+            records.add(record);
+        }
+
+        Map<Long, Task> tasksById = tasks.stream().collect(Collectors.toMap(Task::getId, Function.identity()));
+        TaskRepository taskRepository = RepositoryStubs.stub(TaskRepository.class, Map.of(
+                "findOrderedForUser", args -> new ArrayList<>(ordered),
+                "findByUserId", args -> tasks.stream().filter(t -> t.getUserId() != null).toList(),
+                "findByUserIdIsNull", args -> tasks.stream().filter(t -> t.getUserId() == null).toList(),
+                "findById", args -> Optional.ofNullable(tasksById.get((Long) args[0]))));
+        UserRepository userRepository = RepositoryStubs.stub(UserRepository.class, Map.of(
+                "findById", args -> Optional.of(user)));
+        TimeRecordRepository timeRecordRepository = RepositoryStubs.stub(TimeRecordRepository.class, Map.of(
+                "findByUserIdAndRecordDay", args -> new ArrayList<>(records)));
+
+        ServiceAssembler services = new ServiceAssembler().with(taskRepository, timeRecordRepository, userRepository,
+                new SimpleMeterRegistry(), (ApplicationEventPublisher) event -> { });
+        ServiceAssembler.setField(services.create(TaskMetadataCache.class), "maxUserViews", 16);
+        ServiceAssembler.setField(services.create(TaskListCache.class), "maxSize", 16);
+        services.create(TimeRecordFactory.class);
+        services.create(SwitchWriteBehind.class);
+        services.create(TaskMetrics.class);
+        services.create(ActiveSessionRegistry.class);
+        taskService = services.create(TaskService.class);
+    }
+
+    // After the first call this is the per-user cached list
+    @Benchmark
+    public List<Task> getTasks() {
+        return taskService.getTasks(USER_ID);
+    }
+
+    @Benchmark
+    public TimelineData getTimelineData() {
+        return taskService.getTimelineData(USER_ID, DATE);
+    }
+}
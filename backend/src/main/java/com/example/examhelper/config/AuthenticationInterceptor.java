@@ -1,18 +1,20 @@
 package com.example.examhelper.config;
 
 import com.example.examhelper.model.User;
+import com.example.examhelper.service.StreamTicketService;
 import com.example.examhelper.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 @Component
 @RequiredArgsConstructor
-public class AuthenticationInterceptor implements HandlerInterceptor {
+public class AuthenticationInterceptor implements AsyncHandlerInterceptor {
 
     private final UserService userService;
+    private final StreamTicketService streamTicketService;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
@@ -20,6 +22,20 @@ public class AuthenticationInterceptor implements HandlerInterceptor {
             return true;
         }
 
+        // EventSource cannot send headers, so the status stream is opened with a single-use
+        // ticket (see StreamTicket) rather than the token itself
+        if (request.getRequestURI().endsWith("/tasks/stream")) {
+            String ticket = request.getParameter("ticket");
+            Long userId = ticket == null || ticket.isEmpty() ? null : streamTicketService.redeem(ticket);
+            User user = userId == null ? null : userService.getUserById(userId);
+            if (user == null) {
+                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                return false;
+            }
+            UserContext.setCurrentUser(user);
+            return true;
+        }
+
         String token = request.getHeader("Authorization");
         if (token != null && token.startsWith("Bearer ")) {
             token = token.substring(7);
@@ -40,6 +56,12 @@ public class AuthenticationInterceptor implements HandlerInterceptor {
         return true;
     }
 
+    // Streaming responses release the request thread without afterCompletion being called
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserContext.clear();
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         UserContext.clear();
@@ -0,0 +1,49 @@
+package com.example.examhelper.config;
+
+import com.example.examhelper.service.IdleUserTracker;
+import com.example.examhelper.service.SwitchWriteBehind;
+import com.example.examhelper.service.TokenCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Publishes the statistics the in-memory components already keep as meters
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder tokenCacheMetrics(TokenCache tokenCache) {
+        return registry -> {
+            FunctionCounter.builder("cache.gets", tokenCache, TokenCache::getHits)
+                    .tags("cache", "token", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", tokenCache, TokenCache::getMisses)
+                    .tags("cache", "token", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", tokenCache, TokenCache::getEvictions)
+                    .tag("cache", "token").register(registry);
+            Gauge.builder("cache.size", tokenCache, TokenCache::size)
+                    .tag("cache", "token").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder idleUserTrackerMetrics(IdleUserTracker idleUserTracker) {
+        return registry -> {
+            FunctionCounter.builder("app.mandatory.task.passes", idleUserTracker, IdleUserTracker::getPasses)
+                    .description("Passes that moved idle users onto the Leave task").register(registry);
+            FunctionCounter.builder("app.mandatory.task.users.changed", idleUserTracker, IdleUserTracker::getUsersChanged)
+                    .description("Users moved onto the Leave task").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder switchWriteBehindMetrics(SwitchWriteBehind switchWriteBehind) {
+        return registry -> {
+            Gauge.builder("app.write.behind.pending", switchWriteBehind, SwitchWriteBehind::pendingCount)
+                    .description("Switches not yet written to the database").register(registry);
+            FunctionCounter.builder("app.write.behind.flushed", switchWriteBehind, SwitchWriteBehind::getFlushedSwitches)
+                    .description("Switches written to the database by the flusher").register(registry);
+        };
+    }
+}
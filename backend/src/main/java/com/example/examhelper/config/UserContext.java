@@ -1,16 +1,32 @@
 package com.example.examhelper.config;
 
 import com.example.examhelper.model.User;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
+// Authenticated user of the current request. The user is stored on the request itself, so it
+// is still found on whichever thread continues the request (async dispatch, or a new virtual
+// thread per request in the virtual-threads profile); the thread-local is only a shortcut
+// for the thread that authenticated it and is always cleared when that thread lets go.
 public class UserContext {
+    private static final String REQUEST_ATTRIBUTE = UserContext.class.getName() + ".currentUser";
     private static final ThreadLocal<User> currentUser = new ThreadLocal<>();
 
     public static void setCurrentUser(User user) {
         currentUser.set(user);
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(REQUEST_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
     }
 
     public static User getCurrentUser() {
-        return currentUser.get();
+        User user = currentUser.get();
+        if (user != null) {
+            return user;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes == null ? null : (User) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
     }
 
     public static void clear() {
@@ -2,16 +2,26 @@ package com.example.examhelper.controller;
 
 import com.example.examhelper.model.ChineseDictionary;
 import com.example.examhelper.service.ChineseDictionaryService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/idioms")
+@Slf4j
 public class ChineseDictionaryController {
 
+    private static final int MAX_BROWSE_SIZE = 200;
+    private static final int MAX_SAMPLE_SIZE = 100;
+    private static final Duration BROWSE_MAX_AGE = Duration.ofMinutes(1);
+
     @Autowired
     private ChineseDictionaryService service;
 
@@ -21,7 +31,7 @@ public class ChineseDictionaryController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "30") int size) {
         try {
-            System.out.println("Received request for idioms with keyword: " + keyword + ", page: " + page + ", size: " + size);
+            log.debug("Idiom list requested with keyword '{}', page {}, size {}", keyword, page, size);
             Page<ChineseDictionary> result;
             if (keyword != null && !keyword.isEmpty()) {
                 result = service.searchIdioms(keyword, page, size);
@@ -30,20 +40,71 @@ public class ChineseDictionaryController {
             }
             return ResponseEntity.ok(result);
         } catch (Throwable e) {
-            e.printStackTrace();
+            log.error("Fetching idioms failed for keyword '{}'", keyword, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error fetching idioms: " + e.getMessage());
         }
     }
 
+    // Keyset pagination over search results: pass the previous page's nextCursor as cursor
+    @GetMapping("/search")
+    public ResponseEntity<?> searchIdioms(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(defaultValue = "30") int size) {
+        try {
+            return ResponseEntity.ok(service.searchIdioms(keyword, cursor, size));
+        } catch (Throwable e) {
+            log.error("Idiom search failed for keyword '{}'", keyword, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error searching idioms: " + e.getMessage());
+        }
+    }
+
+    // Keyset browse of the whole dictionary. Pages are cached and carry an ETag, so a client
+    // revalidating an unchanged page gets a 304 without any database access.
+    @GetMapping("/browse")
+    public ResponseEntity<?> browseIdioms(
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(defaultValue = "30") int size,
+            WebRequest request) {
+        try {
+            int pageSize = Math.max(1, Math.min(size, MAX_BROWSE_SIZE));
+            String etag = service.browseEtag(cursor, pageSize);
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.maxAge(BROWSE_MAX_AGE).cachePrivate())
+                    .body(service.browseIdioms(cursor, pageSize));
+        } catch (Throwable e) {
+            log.error("Idiom browse failed at cursor {}", cursor, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error browsing idioms: " + e.getMessage());
+        }
+    }
+
     @GetMapping("/random")
     public ResponseEntity<?> getRandomIdioms(@RequestParam(defaultValue = "10") int limit) {
         try {
-            return ResponseEntity.ok(service.getRandomIdioms(limit));
+            return ResponseEntity.ok(service.getRandomIdioms(Math.max(1, Math.min(limit, MAX_SAMPLE_SIZE))));
         } catch (Throwable e) {
-            e.printStackTrace();
+            log.error("Fetching random idioms failed", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error fetching random idioms: " + e.getMessage());
         }
     }
+
+    // Same idioms for everyone during the day
+    @GetMapping("/daily")
+    public ResponseEntity<?> getDailyIdioms(@RequestParam(defaultValue = "10") int limit) {
+        try {
+            return ResponseEntity.ok(service.getDailyIdioms(Math.max(1, Math.min(limit, MAX_SAMPLE_SIZE))));
+        } catch (Throwable e) {
+            log.error("Fetching daily idioms failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error fetching daily idioms: " + e.getMessage());
+        }
+    }
 }
@@ -1,13 +1,32 @@
 package com.example.examhelper.controller;
 
+import com.example.examhelper.dto.CheckInStatus;
+import com.example.examhelper.dto.CountedCheckResult;
+import com.example.examhelper.dto.LineChartData;
+import com.example.examhelper.dto.PieChartData;
+import com.example.examhelper.dto.RecomputeProgress;
+import com.example.examhelper.dto.TimelineData;
 import com.example.examhelper.model.Task;
+import com.example.examhelper.service.ActiveSessionRegistry;
+import com.example.examhelper.service.AggregateRecompute;
+import com.example.examhelper.service.CountedFlagChecker;
+import com.example.examhelper.service.PeriodRollupStore;
+import com.example.examhelper.service.StreamTicketService;
 import com.example.examhelper.service.TaskService;
+import com.example.examhelper.service.TimeRecordTransfer;
+import com.example.examhelper.service.UserStatusBroadcaster;
 import com.example.examhelper.config.UserContext;
 import lombok.Data;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +36,12 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class TaskController {
     private final TaskService taskService;
+    private final UserStatusBroadcaster userStatusBroadcaster;
+    private final TimeRecordTransfer timeRecordTransfer;
+    private final ActiveSessionRegistry activeSessionRegistry;
+    private final AggregateRecompute aggregateRecompute;
+    private final CountedFlagChecker countedFlagChecker;
+    private final StreamTicketService streamTicketService;
 
     private void checkUser(Long userId) {
         com.example.examhelper.model.User currentUser = UserContext.getCurrentUser();
@@ -25,6 +50,16 @@ public class TaskController {
         }
     }
 
+    // Case-insensitive enum request parameter; null when there is no such constant
+    private static <E extends Enum<E>> E parseOption(Class<E> type, String value) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
     @GetMapping
     public ResponseEntity<List<Task>> getTasks(@RequestParam Long userId) {
         checkUser(userId);
@@ -37,10 +72,42 @@ public class TaskController {
         return ResponseEntity.ok(taskService.addTask(request.getName(), request.getUserId()));
     }
 
+    // Clients may send an Idempotency-Key (up to 64 characters); a request repeated with the
+    // same key gets the first response and does not switch again
     @PostMapping("/switch")
-    public ResponseEntity<?> switchTask(@RequestBody SwitchTaskRequest request) {
+    public ResponseEntity<?> switchTask(@RequestBody SwitchTaskRequest request,
+                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         checkUser(request.getUserId());
-        return ResponseEntity.ok(taskService.switchTask(request.getUserId(), request.getTaskId()));
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > 64)) {
+            throw new RuntimeException("Invalid Idempotency-Key");
+        }
+        return ResponseEntity.ok(taskService.switchTask(request.getUserId(), request.getTaskId(), idempotencyKey));
+    }
+
+    // Single-use ticket for opening /stream, valid for app.status-stream.ticket-ttl
+    @PostMapping("/stream/ticket")
+    public ResponseEntity<Map<String, String>> issueStreamTicket(@RequestParam Long userId) {
+        checkUser(userId);
+        return ResponseEntity.ok(Map.of("ticket", streamTicketService.issue(userId)));
+    }
+
+    // Pushes "state" events whenever the user's current task changes, and "refresh" when
+    // anything else about the user does. Opened with a ticket from /stream/ticket.
+    @GetMapping(value = "/stream", produces = "text/event-stream")
+    public SseEmitter streamStatus(@RequestParam Long userId) {
+        checkUser(userId);
+        return userStatusBroadcaster.subscribe(userId);
+    }
+
+    // The user's current task, in the same shape as the stream's "state" events; served from
+    // memory, so clients can poll it cheaply
+    @GetMapping("/active")
+    public ResponseEntity<UserStatusBroadcaster.UserState> getActiveSession(@RequestParam Long userId) {
+        checkUser(userId);
+        ActiveSessionRegistry.Session session = activeSessionRegistry.get(userId);
+        return ResponseEntity.ok(session == null
+                ? new UserStatusBroadcaster.UserState(null, null)
+                : new UserStatusBroadcaster.UserState(session.taskId(), session.startTime()));
     }
 
     @DeleteMapping("/{taskId}")
@@ -50,14 +117,14 @@ public class TaskController {
     }
 
     @GetMapping("/stats/pie")
-    public ResponseEntity<Map<String, Object>> getPieChart(@RequestParam Long userId, @RequestParam(required = false) String date) {
+    public ResponseEntity<PieChartData> getPieChart(@RequestParam Long userId, @RequestParam(required = false) String date) {
         checkUser(userId);
         if (date == null) date = LocalDate.now().toString();
         return ResponseEntity.ok(taskService.getPieChartData(userId, date));
     }
 
     @GetMapping("/stats/line")
-    public ResponseEntity<Map<String, Object>> getLineChart(
+    public ResponseEntity<LineChartData> getLineChart(
             @RequestParam Long userId,
             @RequestParam(required = false) String startDate,
             @RequestParam(required = false) String endDate) {
@@ -69,6 +136,31 @@ public class TaskController {
         return ResponseEntity.ok(taskService.getLineChartData(userId, startDate, endDate));
     }
 
+    // Counted duration per day, ISO week or month; the first and last buckets only cover the
+    // part inside the range. A range of more than 366 buckets is rejected.
+    @GetMapping("/stats/series")
+    public ResponseEntity<?> getSeries(
+            @RequestParam Long userId,
+            @RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate) {
+        checkUser(userId);
+
+        if (endDate == null) endDate = LocalDate.now().toString();
+        if (startDate == null) startDate = LocalDate.now().minusYears(1).plusDays(1).toString(); // Default 1 year
+
+        PeriodRollupStore.Granularity period = parseOption(PeriodRollupStore.Granularity.class, granularity);
+        if (period == null) {
+            return ResponseEntity.badRequest().body("Unknown granularity: " + granularity);
+        }
+        if (PeriodRollupStore.bucketCount(period, LocalDate.parse(startDate), LocalDate.parse(endDate))
+                > PeriodRollupStore.MAX_BUCKETS) {
+            return ResponseEntity.badRequest().body("Range spans more than " + PeriodRollupStore.MAX_BUCKETS
+                    + " " + granularity + " buckets, narrow it or use a coarser granularity");
+        }
+        return ResponseEntity.ok(taskService.getSeries(userId, period, startDate, endDate));
+    }
+
     @GetMapping("/stats/rankings")
     public ResponseEntity<Map<String, Object>> getRankings(
             @RequestParam Long userId,
@@ -79,14 +171,14 @@ public class TaskController {
     }
 
     @GetMapping("/timeline")
-    public ResponseEntity<List<Map<String, Object>>> getTimeline(@RequestParam Long userId, @RequestParam(required = false) String date) {
+    public ResponseEntity<TimelineData> getTimeline(@RequestParam Long userId, @RequestParam(required = false) String date) {
         checkUser(userId);
         if (date == null) date = LocalDate.now().toString();
         return ResponseEntity.ok(taskService.getTimelineData(userId, date));
     }
 
     @GetMapping("/checkin")
-    public ResponseEntity<Map<String, Object>> getCheckInStatus(@RequestParam Long userId) {
+    public ResponseEntity<CheckInStatus> getCheckInStatus(@RequestParam Long userId) {
         checkUser(userId);
         return ResponseEntity.ok(taskService.getCheckInStatus(userId));
     }
@@ -98,6 +190,14 @@ public class TaskController {
         return ResponseEntity.ok().build();
     }
 
+    // Moves one task right after afterTaskId (or to the top when it is null)
+    @PostMapping("/order/move")
+    public ResponseEntity<?> moveTask(@RequestBody MoveTaskRequest request) {
+        checkUser(request.getUserId());
+        taskService.moveTask(request.getUserId(), request.getTaskId(), request.getAfterTaskId());
+        return ResponseEntity.ok().build();
+    }
+
     @PutMapping("/{taskId}/records-tag")
     public ResponseEntity<?> updateTaskRecordsTag(@PathVariable Long taskId, @RequestBody UpdateRecordsTagRequest request) {
         com.example.examhelper.model.User currentUser = UserContext.getCurrentUser();
@@ -112,6 +212,45 @@ public class TaskController {
         return ResponseEntity.ok().build();
     }
 
+    // Streams the user's records as CSV or NDJSON, optionally limited to [startDate, endDate]
+    @GetMapping("/records/export")
+    public ResponseEntity<StreamingResponseBody> exportRecords(
+            @RequestParam Long userId,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(defaultValue = "csv") String format) {
+        checkUser(userId);
+        TimeRecordTransfer.Format recordFormat = parseOption(TimeRecordTransfer.Format.class, format);
+        if (recordFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        LocalDate from = startDate == null ? null : LocalDate.parse(startDate);
+        LocalDate to = endDate == null ? null : LocalDate.parse(endDate);
+
+        String extension = recordFormat == TimeRecordTransfer.Format.CSV ? "csv" : "ndjson";
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(recordFormat == TimeRecordTransfer.Format.CSV
+                        ? "text/csv;charset=UTF-8" : "application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"time-records-" + userId + "." + extension + "\"")
+                .body(out -> timeRecordTransfer.export(userId, from, to, recordFormat, out));
+    }
+
+    // Request body in the export format (or just taskId, startTime, endTime per line). Form
+    // content types are refused: the container would consume the body as form parameters.
+    @PostMapping(value = "/records/import",
+            consumes = {"text/csv", "application/x-ndjson", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> importRecords(
+            @RequestParam Long userId,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletRequest request) throws IOException {
+        checkUser(userId);
+        TimeRecordTransfer.Format recordFormat = parseOption(TimeRecordTransfer.Format.class, format);
+        if (recordFormat == null) {
+            return ResponseEntity.badRequest().body("Unknown format: " + format);
+        }
+        return ResponseEntity.ok(timeRecordTransfer.importRecords(userId, recordFormat, request.getInputStream()));
+    }
+
     @PostMapping("/admin/grant-edit")
     public ResponseEntity<?> grantTimeEditPermission(@RequestBody GrantPermissionRequest request) {
         com.example.examhelper.model.User currentUser = UserContext.getCurrentUser();
@@ -125,6 +264,33 @@ public class TaskController {
         return ResponseEntity.ok().build();
     }
 
+    // Recomputes every user's daily totals in the background; poll the GET for progress
+    @PostMapping("/admin/recompute")
+    public ResponseEntity<?> startRecompute() {
+        if (!"ADMIN".equals(UserContext.getCurrentUser().getRole())) {
+             return ResponseEntity.status(403).body("Access denied");
+        }
+        return ResponseEntity.accepted().body(aggregateRecompute.start());
+    }
+
+    @GetMapping("/admin/recompute")
+    public ResponseEntity<?> recomputeProgress() {
+        if (!"ADMIN".equals(UserContext.getCurrentUser().getRole())) {
+             return ResponseEntity.status(403).body("Access denied");
+        }
+        return ResponseEntity.ok(aggregateRecompute.progress());
+    }
+
+    // Verifies the denormalized counted flags; repair=true also fixes any that are off
+    @GetMapping("/admin/counted-check")
+    public ResponseEntity<?> checkCountedFlags(@RequestParam(defaultValue = "false") boolean repair) {
+        if (!"ADMIN".equals(UserContext.getCurrentUser().getRole())) {
+             return ResponseEntity.status(403).body("Access denied");
+        }
+        CountedCheckResult result = countedFlagChecker.check(repair);
+        return ResponseEntity.ok(result);
+    }
+
     @PostMapping("/settle")
     public ResponseEntity<?> settleDailyTask(@RequestBody SettleTaskRequest request) {
         checkUser(request.getUserId());
@@ -150,6 +316,13 @@ public class TaskController {
         private List<Long> taskIds;
     }
 
+    @Data
+    public static class MoveTaskRequest {
+        private Long userId;
+        private Long taskId;
+        private Long afterTaskId;
+    }
+
     @Data
     public static class UpdateRecordsTagRequest {
         private Boolean recordsTag;
@@ -0,0 +1,9 @@
+package com.example.examhelper.dto;
+
+import java.util.List;
+
+public record CheckInStatus(Integer dailyGoal, List<DayStatus> statusList) {
+
+    public record DayStatus(String date, long duration, boolean metGoal) {
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.examhelper.dto;
+
+// Outcome of a CountedFlagChecker run; mismatches are counted before any repair
+public record CountedCheckResult(long tasksChecked, long taskMismatches, long recordsChecked, long recordMismatches,
+                                 boolean repaired, long elapsedMs) {
+}
@@ -0,0 +1,9 @@
+package com.example.examhelper.dto;
+
+import com.example.examhelper.model.ChineseDictionary;
+
+import java.util.List;
+
+// One keyset page: pass nextCursor as the next request's cursor; null on the last page
+public record IdiomPage(List<ChineseDictionary> items, Long nextCursor, long total) {
+}
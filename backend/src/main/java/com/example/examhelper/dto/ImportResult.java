@@ -0,0 +1,7 @@
+package com.example.examhelper.dto;
+
+import java.util.List;
+
+// Outcome of a time record import; errors holds the first rejected lines with the reason
+public record ImportResult(long imported, long rejected, List<String> errors, long elapsedMs, long rowsPerSecond) {
+}
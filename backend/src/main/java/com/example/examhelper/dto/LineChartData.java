@@ -0,0 +1,7 @@
+package com.example.examhelper.dto;
+
+import java.util.List;
+
+// Counted duration (ms) per day, ISO week or month; durations[i] belongs to dates[i]
+public record LineChartData(List<String> dates, long[] durations) {
+}
@@ -0,0 +1,10 @@
+package com.example.examhelper.dto;
+
+import java.util.List;
+
+// Per-task durations of one day, largest first
+public record PieChartData(List<Slice> data) {
+
+    public record Slice(String name, long value, String formatted) {
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.examhelper.dto;
+
+// State of the last (or running) aggregate recompute; generation is set once it is swapped in
+public record RecomputeProgress(String state, Long generation, int partitionsDone, int partitionsTotal,
+                                long rowsScanned, long groups, long elapsedMs, long rowsPerSecond, String error) {
+}
@@ -0,0 +1,22 @@
+package com.example.examhelper.dto;
+
+import java.util.List;
+
+// Records of one day in columnar form, ordered by start time: the i-th record spans
+// startTimes[i]..endTimes[i] on task tasks[taskIdx[i]]. Each task is listed once no matter
+// how many records it has. The task running right now, if the day is today, is in current.
+public record TimelineData(
+        List<TaskInfo> tasks,
+        long[] ids,
+        int[] taskIdx,
+        long[] startTimes,
+        long[] endTimes,
+        long[] durations,
+        Current current) {
+
+    public record TaskInfo(String taskName, boolean isSystem, boolean recordsTag) {
+    }
+
+    public record Current(int taskIdx, long startTime, long endTime, long duration) {
+    }
+}
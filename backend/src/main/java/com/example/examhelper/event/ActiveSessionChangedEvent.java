@@ -0,0 +1,7 @@
+package com.example.examhelper.event;
+
+// Published by ActiveSessionRegistry after it applied a change to the user's running
+// session; listeners read the current session back from the registry. Local only: every
+// node derives its registry from the replayed UserStateChangedEvents.
+public record ActiveSessionChangedEvent(Long userId) {
+}
@@ -0,0 +1,7 @@
+package com.example.examhelper.event;
+
+// Marks events that other nodes need to keep their caches current. With clustering enabled,
+// ClusterChangeLog writes them to a shared table in the publishing transaction and the other
+// nodes publish them again locally, so implementations must round-trip through JSON.
+public interface ClusterEvent {
+}
@@ -0,0 +1,7 @@
+package com.example.examhelper.event;
+
+import com.example.examhelper.model.Task;
+
+// Published when a task is created or any of its fields change (including soft delete).
+public record TaskChangedEvent(Task task) implements ClusterEvent {
+}
@@ -0,0 +1,5 @@
+package com.example.examhelper.event;
+
+// Published when a user's task order changes.
+public record TaskOrderChangedEvent(Long userId) implements ClusterEvent {
+}
@@ -0,0 +1,7 @@
+package com.example.examhelper.event;
+
+import com.example.examhelper.model.TimeRecord;
+
+// Published whenever a new TimeRecord row is written.
+public record TimeRecordSavedEvent(TimeRecord record) implements ClusterEvent {
+}
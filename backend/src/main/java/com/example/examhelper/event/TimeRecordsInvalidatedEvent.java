@@ -0,0 +1,6 @@
+package com.example.examhelper.event;
+
+// Published when a user's existing records (or the rules used to aggregate them) change
+// in a way that cannot be applied as a simple delta, e.g. a manual time edit.
+public record TimeRecordsInvalidatedEvent(Long userId) implements ClusterEvent {
+}
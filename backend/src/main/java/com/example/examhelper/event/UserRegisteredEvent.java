@@ -0,0 +1,5 @@
+package com.example.examhelper.event;
+
+// Published when a new user is created.
+public record UserRegisteredEvent(Long userId, String username) implements ClusterEvent {
+}
@@ -0,0 +1,16 @@
+package com.example.examhelper.event;
+
+// Published whenever a user's current task changes; a null taskId means the user is idle.
+// changedAt is when this state began (the task's start, or when the user became idle), so
+// listeners can drop an event that arrives after a newer one; null when not known, e.g. a
+// state read back from the DB, which is then taken as current.
+public record UserStateChangedEvent(Long userId, Long currentTaskId, Long currentTaskStartTime, Long changedAt)
+        implements ClusterEvent {
+
+    // What a later event is compared with once this one is applied: without a change time,
+    // the start of the task if there is one, otherwise anything after it applies
+    public long orderTime() {
+        if (changedAt != null) return changedAt;
+        return currentTaskStartTime != null ? currentTaskStartTime : Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.examhelper.event;
+
+// Published when a user's profile, role, permissions or token change.
+public record UserUpdatedEvent(Long userId) implements ClusterEvent {
+}
@@ -0,0 +1,30 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// One cache-relevant event, as JSON, for the other nodes to replay; see ClusterChangeLog.
+@Data
+@Entity
+@Table(name = "cluster_change_log", indexes = {
+        @Index(name = "idx_cluster_change_log_created", columnList = "created_at")
+})
+public class ClusterChangeLogEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String origin;
+
+    @Column(name = "event_type", nullable = false, length = 64)
+    private String eventType;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
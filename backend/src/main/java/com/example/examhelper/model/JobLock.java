@@ -0,0 +1,23 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+// Lease on a cluster-wide scheduled job, see ClusterJobLock. One row per job name.
+@Data
+@Entity
+@Table(name = "job_lock")
+public class JobLock {
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(name = "locked_by", nullable = false, length = 64)
+    private String lockedBy;
+
+    @Column(name = "locked_at", nullable = false)
+    private Long lockedAt;
+
+    @Column(name = "locked_until", nullable = false)
+    private Long lockedUntil;
+}
@@ -0,0 +1,29 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Single-use credential for opening the status stream. EventSource cannot send an
+// Authorization header, so the client trades its token for a ticket and puts the ticket in
+// the stream URL instead; whatever logs that URL only sees a spent or expired ticket. Kept in
+// the database so a ticket issued by one node can be redeemed on another.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "stream_tickets", indexes = {
+        @Index(name = "idx_stream_tickets_expires", columnList = "expires_at")
+})
+public class StreamTicket {
+    @Id
+    @Column(length = 64)
+    private String ticket;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "expires_at", nullable = false)
+    private Long expiresAt;
+}
@@ -0,0 +1,34 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Generation of a summary table that readers should use. Swapping to a freshly computed
+// generation is a single-row update, so readers see either the old totals or the new ones.
+@Data
+@Entity
+@Table(name = "summary_generation")
+public class SummaryGeneration {
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    // 0 while there is none to use: before the first run, or once history it covers changed
+    @Column(nullable = false)
+    private Long generation;
+
+    // The totals cover the logical days before this one; readers take later days from the source
+    @Column(name = "through_day")
+    private LocalDate throughDay;
+
+    // Moves on with every swap and invalidation, so a run can tell whether what it scanned
+    // is still current when it swaps
+    @Column(nullable = false)
+    private Long version;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,51 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// Outcome of a task switch sent with an Idempotency-Key, so a retry of the same request
+// returns this result instead of switching again. Written in the switch's transaction and
+// purged after a day.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(SwitchRequest.Key.class)
+@Table(name = "switch_requests", indexes = {
+        @Index(name = "idx_switch_requests_created", columnList = "created_at")
+})
+public class SwitchRequest {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+
+    @Column(name = "task_id")
+    private Long taskId;
+
+    @Column(name = "start_time", nullable = false)
+    private Long startTime;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private Long userId;
+        private String idempotencyKey;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.examhelper.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -25,4 +26,25 @@ public class Task {
 
     @Column(name = "records_tag")
     private Boolean recordsTag;
+
+    // isCounted() as a column, refreshed on every save, so queries filter on it instead of
+    // restating the rule; time_records.counted holds a copy per record
+    @JsonIgnore
+    private Boolean counted;
+
+    // Whether time spent on this task counts towards daily totals and rankings:
+    // an explicit records_tag wins, otherwise only user-defined tasks count.
+    @JsonIgnore
+    public boolean isCounted() {
+        if (recordsTag != null) {
+            return recordsTag;
+        }
+        return userId != null;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void syncCounted() {
+        counted = isCounted();
+    }
 }
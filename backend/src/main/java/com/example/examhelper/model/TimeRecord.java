@@ -2,11 +2,15 @@ package com.example.examhelper.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "time_records")
+@Table(name = "time_records", indexes = {
+        @Index(name = "idx_time_records_user_day_counted", columnList = "user_id, record_day, counted, duration"),
+        @Index(name = "idx_time_records_day_counted", columnList = "record_day, counted, user_id, duration")
+})
 public class TimeRecord {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -29,6 +33,20 @@ public class TimeRecord {
     @Column(name = "record_date")
     private String recordDate; // Format: YYYY-MM-DD
 
+    // Typed copy of recordDate used by all queries; always derived from recordDate
+    @Column(name = "record_day")
+    private LocalDate recordDay;
+
+    // The task's counted flag when the record was written (see Task#isCounted); totals filter
+    // on it instead of joining tasks, and CountedFlagChecker keeps it in line with the task
+    private Boolean counted;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
+
+    @PrePersist
+    @PreUpdate
+    void syncRecordDay() {
+        recordDay = recordDate == null ? null : LocalDate.parse(recordDate);
+    }
 }
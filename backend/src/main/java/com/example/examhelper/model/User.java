@@ -2,11 +2,15 @@ package com.example.examhelper.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 import java.time.LocalDateTime;
 
+// Only changed columns are written, so saving other fields never overwrites the current
+// task set concurrently by the settlement job or the switch write-behind
 @Data
 @Entity
-@Table(name = "users")
+@DynamicUpdate
+@Table(name = "users", indexes = @Index(name = "idx_users_token", columnList = "token"))
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -34,9 +38,6 @@ public class User {
     @Column(name = "daily_goal")
     private Integer dailyGoal = 8; // Default 8 hours
 
-    @Column(name = "task_order", columnDefinition = "TEXT")
-    private String taskOrder;
-
     @Column(name = "role")
     private String role = "USER"; // USER, ADMIN
 
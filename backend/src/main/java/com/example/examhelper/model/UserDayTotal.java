@@ -0,0 +1,55 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// A user's totals for one logical day as computed by AggregateRecompute. Each run writes a
+// new generation; readers only see the one named in summary_generation.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(UserDayTotal.Key.class)
+@Table(name = "user_day_totals", indexes = {
+        @Index(name = "idx_user_day_totals_day", columnList = "generation, record_day, counted_duration")
+})
+public class UserDayTotal {
+    @Id
+    private Long generation;
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "record_day")
+    private LocalDate recordDay;
+
+    // Duration of counted tasks only (see Task#isCounted)
+    @Column(name = "counted_duration", nullable = false)
+    private Long countedDuration;
+
+    @Column(name = "total_duration", nullable = false)
+    private Long totalDuration;
+
+    @Column(name = "record_count", nullable = false)
+    private Integer recordCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private Long generation;
+        private Long userId;
+        private LocalDate recordDay;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+// Position of a task in a user's task list. Ranks are sparse, so moving a task only
+// rewrites its own row with a rank between its new neighbours'; tasks without a row sort
+// after the ranked ones.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(UserTaskOrder.Key.class)
+@Table(name = "user_task_order", indexes = {
+        @Index(name = "idx_user_task_order_rank", columnList = "user_id, sort_rank")
+})
+public class UserTaskOrder {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "task_id")
+    private Long taskId;
+
+    @Column(name = "sort_rank", nullable = false)
+    private Long sortRank;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private Long userId;
+        private Long taskId;
+    }
+}
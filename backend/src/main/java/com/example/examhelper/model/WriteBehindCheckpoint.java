@@ -0,0 +1,18 @@
+package com.example.examhelper.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+// Last task switch log entry written to the DB, see SwitchWriteBehind. One row per node, by
+// app.cluster.node-id ("local" when not clustered), since each node has its own log.
+@Data
+@Entity
+@Table(name = "write_behind_checkpoints")
+public class WriteBehindCheckpoint {
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Column(name = "last_seq", nullable = false)
+    private Long lastSeq;
+}
@@ -0,0 +1,18 @@
+package com.example.examhelper.repository;
+
+import com.example.examhelper.model.StreamTicket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface StreamTicketRepository extends JpaRepository<StreamTicket, String> {
+    // 1 for exactly one caller per unexpired ticket, so a ticket is spent at most once
+    @Modifying
+    @Query("DELETE FROM StreamTicket t WHERE t.ticket = :ticket AND t.expiresAt > :now")
+    int redeem(@Param("ticket") String ticket, @Param("now") Long now);
+
+    @Modifying
+    @Query("DELETE FROM StreamTicket t WHERE t.expiresAt <= :now")
+    int deleteExpired(@Param("now") Long now);
+}
@@ -0,0 +1,15 @@
+package com.example.examhelper.repository;
+
+import com.example.examhelper.model.SwitchRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface SwitchRequestRepository extends JpaRepository<SwitchRequest, SwitchRequest.Key> {
+    @Modifying
+    @Query("DELETE FROM SwitchRequest r WHERE r.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -9,6 +9,16 @@ import java.util.List;
 public interface TaskRepository extends JpaRepository<Task, Long> {
     @Query("SELECT t FROM Task t WHERE (t.userId = :userId OR t.userId IS NULL) AND t.deleted = false ORDER BY CASE WHEN t.id = 1 THEN 0 ELSE 1 END, t.id DESC")
     List<Task> findByUserIdOrUserIdIsNull(@Param("userId") Long userId);
+
+    // The user's task list in display order: ranked tasks by rank, then the rest with the
+    // global tasks first, each group by id
+    @Query("SELECT t FROM Task t LEFT JOIN UserTaskOrder o ON o.userId = :userId AND o.taskId = t.id " +
+            "WHERE (t.userId = :userId OR t.userId IS NULL) AND t.deleted = false " +
+            "ORDER BY CASE WHEN o.sortRank IS NULL THEN 1 ELSE 0 END, o.sortRank, " +
+            "CASE WHEN t.userId IS NULL THEN 0 ELSE 1 END, t.id")
+    List<Task> findOrderedForUser(@Param("userId") Long userId);
     
     List<Task> findByUserId(Long userId);
+
+    List<Task> findByUserIdIsNull();
 }
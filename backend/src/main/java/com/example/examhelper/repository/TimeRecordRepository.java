@@ -2,34 +2,35 @@ package com.example.examhelper.repository;
 
 import com.example.examhelper.model.TimeRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import java.time.LocalDate;
 import java.util.List;
 
 public interface TimeRecordRepository extends JpaRepository<TimeRecord, Long> {
-    List<TimeRecord> findByUserIdAndRecordDate(Long userId, String recordDate);
+    List<TimeRecord> findByUserIdAndRecordDay(Long userId, LocalDate recordDay);
     
-    @Query("SELECT t FROM TimeRecord t WHERE t.userId = :userId AND t.recordDate BETWEEN :startDate AND :endDate")
-    List<TimeRecord> findByUserIdAndDateRange(@Param("userId") Long userId, @Param("startDate") String startDate, @Param("endDate") String endDate);
+    @Query("SELECT t FROM TimeRecord t WHERE t.userId = :userId AND t.recordDay BETWEEN :startDate AND :endDate")
+    List<TimeRecord> findByUserIdAndDateRange(@Param("userId") Long userId, @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @Query(value = "SELECT tr.user_id, SUM(tr.duration) FROM time_records tr " +
-                   "JOIN tasks t ON tr.task_id = t.id " +
-                   "WHERE tr.record_date = :date " +
-                   "AND (t.records_tag = 1 OR (t.records_tag IS NULL AND t.user_id IS NOT NULL)) " +
-                   "GROUP BY tr.user_id " +
-                   "ORDER BY SUM(tr.duration) DESC", nativeQuery = true)
-    List<Object[]> findUserDurationsByDate(@Param("date") String date);
+    // Totals filter on the counted flag copied onto each record, so none of these joins tasks
+    // and each is answered from idx_time_records_day_counted or idx_time_records_user_day_counted
+    @Query("SELECT t.userId, SUM(t.duration) FROM TimeRecord t " +
+           "WHERE t.recordDay = :date AND t.counted = TRUE " +
+           "GROUP BY t.userId " +
+           "ORDER BY SUM(t.duration) DESC")
+    List<Object[]> findUserDurationsByDate(@Param("date") LocalDate date);
 
-    @Query(value = "SELECT SUM(tr.duration) FROM time_records tr " +
-                   "JOIN tasks t ON tr.task_id = t.id " +
-                   "WHERE tr.user_id = :userId " +
-                   "AND (t.records_tag = 1 OR (t.records_tag IS NULL AND t.user_id IS NOT NULL))", nativeQuery = true)
+    @Query("SELECT SUM(t.duration) FROM TimeRecord t WHERE t.userId = :userId AND t.counted = TRUE")
     Long getTotalDurationByUserId(@Param("userId") Long userId);
 
-    @Query(value = "SELECT SUM(tr.duration) FROM time_records tr " +
-                   "JOIN tasks t ON tr.task_id = t.id " +
-                   "WHERE tr.user_id = :userId " +
-                   "AND tr.record_date BETWEEN :startDate AND :endDate " +
-                   "AND (t.records_tag = 1 OR (t.records_tag IS NULL AND t.user_id IS NOT NULL))", nativeQuery = true)
-    Long getTotalDurationByUserIdAndDateRange(@Param("userId") Long userId, @Param("startDate") String startDate, @Param("endDate") String endDate);
+    @Query("SELECT SUM(t.duration) FROM TimeRecord t " +
+           "WHERE t.userId = :userId AND t.recordDay BETWEEN :startDate AND :endDate AND t.counted = TRUE")
+    Long getTotalDurationByUserIdAndDateRange(@Param("userId") Long userId, @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // Re-copies a task's flag onto its records after the task's counted flag changed
+    @Modifying
+    @Query("UPDATE TimeRecord t SET t.counted = :counted WHERE t.taskId = :taskId")
+    int updateCountedForTask(@Param("taskId") Long taskId, @Param("counted") boolean counted);
 }
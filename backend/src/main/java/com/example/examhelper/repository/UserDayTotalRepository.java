@@ -0,0 +1,42 @@
+package com.example.examhelper.repository;
+
+import com.example.examhelper.model.UserDayTotal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Counted totals served from the current generation of user_day_totals for the days it covers
+// (before summary_generation.through_day) and from time_records for the days after, or from
+// time_records alone while there is no current generation. Each is one statement, so a
+// concurrent swap or invalidation is seen entirely or not at all.
+public interface UserDayTotalRepository extends JpaRepository<UserDayTotal, UserDayTotal.Key> {
+
+    // Counted duration per day over the user's whole history, see PeriodRollupStore
+    @Query(value = "SELECT u.record_day, u.counted_duration FROM user_day_totals u " +
+                   "JOIN summary_generation g ON g.name = 'user_day_totals' AND g.generation = u.generation " +
+                   "WHERE u.user_id = :userId AND u.counted_duration > 0 " +
+                   "UNION ALL " +
+                   "SELECT t.record_day, SUM(t.duration) FROM time_records t " +
+                   "WHERE t.user_id = :userId AND t.counted = TRUE AND t.record_day >= COALESCE(" +
+                   "(SELECT g.through_day FROM summary_generation g WHERE g.name = 'user_day_totals' AND g.generation > 0), " +
+                   "DATE '1970-01-01') " +
+                   "GROUP BY t.record_day",
+           nativeQuery = true)
+    List<Object[]> findCountedDurationsByDay(@Param("userId") Long userId);
+
+    // (userId, counted duration) of every user with counted time on the day, see DailyLeaderboard
+    @Query(value = "SELECT u.user_id, u.counted_duration FROM user_day_totals u " +
+                   "JOIN summary_generation g ON g.name = 'user_day_totals' AND g.generation = u.generation " +
+                   "WHERE u.record_day = :date AND u.counted_duration > 0 " +
+                   "UNION ALL " +
+                   "SELECT t.user_id, SUM(t.duration) FROM time_records t " +
+                   "WHERE t.record_day = :date AND t.counted = TRUE AND NOT EXISTS (" +
+                   "SELECT 1 FROM summary_generation g WHERE g.name = 'user_day_totals' AND g.generation > 0 " +
+                   "AND g.through_day > :date) " +
+                   "GROUP BY t.user_id",
+           nativeQuery = true)
+    List<Object[]> findUserDurationsByDate(@Param("date") LocalDate date);
+}
@@ -2,9 +2,37 @@ package com.example.examhelper.repository;
 
 import com.example.examhelper.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByToken(String token);
+
+    @Query("SELECT u.id FROM User u WHERE u.currentTaskId IS NULL")
+    List<Long> findIdleUserIds();
+
+    // (id, currentTaskId, currentTaskStartTime) of every user with a running task
+    @Query("SELECT u.id, u.currentTaskId, u.currentTaskStartTime FROM User u " +
+           "WHERE u.currentTaskId IS NOT NULL AND u.currentTaskStartTime IS NOT NULL")
+    List<Object[]> findActiveSessions();
+
+    // Only touches users that are still idle, so it never overrides a concurrent switch
+    @Modifying
+    @Query("UPDATE User u SET u.currentTaskId = :taskId, u.currentTaskStartTime = :startTime " +
+           "WHERE u.id IN :ids AND u.currentTaskId IS NULL")
+    int assignTaskToIdleUsers(@Param("ids") Collection<Long> ids, @Param("taskId") Long taskId, @Param("startTime") Long startTime);
+
+    // Compare-and-set on the current task: every change sets a new start time, so an
+    // unchanged start time means nobody changed the task since it was read. 0 = lost the race.
+    @Modifying
+    @Query("UPDATE User u SET u.currentTaskId = :taskId, u.currentTaskStartTime = :startTime " +
+           "WHERE u.id = :id AND (u.currentTaskStartTime = :expectedStartTime " +
+           "OR (u.currentTaskStartTime IS NULL AND :expectedStartTime IS NULL))")
+    int switchIfUnchanged(@Param("id") Long id, @Param("taskId") Long taskId, @Param("startTime") Long startTime,
+                          @Param("expectedStartTime") Long expectedStartTime);
 }
@@ -0,0 +1,19 @@
+package com.example.examhelper.repository;
+
+import com.example.examhelper.model.UserTaskOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface UserTaskOrderRepository extends JpaRepository<UserTaskOrder, UserTaskOrder.Key> {
+    List<UserTaskOrder> findByUserId(Long userId);
+
+    UserTaskOrder findFirstByUserIdOrderBySortRankDesc(Long userId);
+
+    @Modifying
+    @Query("DELETE FROM UserTaskOrder o WHERE o.userId = :userId AND o.taskId = :taskId")
+    int deleteByUserIdAndTaskId(@Param("userId") Long userId, @Param("taskId") Long taskId);
+}
@@ -0,0 +1,117 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.ActiveSessionChangedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Running session of every user with a current task (users.current_task_id and
+// current_task_start_time), so live durations can be added to the timeline, check-in and
+// leaderboard without reading users. Loaded once at startup and then kept current from the
+// committed state changes of switches, settlement and the scheduled Leave assignment, on
+// this node or replayed from others. Those arrive in commit-callback order, which can
+// differ from the order of the changes, so each user's entry keeps the time of the change
+// it reflects and an older change never replaces it; a user who went idle keeps an entry
+// without a session for the same reason.
+//
+// A running session belongs to the logical day of its start, the day its record is saved
+// under when it ends.
+@Component
+@DependsOn("switchWriteBehind") // so the load sees switches replayed from the log
+@RequiredArgsConstructor
+@Slf4j
+public class ActiveSessionRegistry {
+
+    private final UserRepository userRepository;
+    private final TaskMetadataCache taskMetadataCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public record Session(Long taskId, long startTime) {
+    }
+
+    // session is null once the user is idle; changedAt orders the changes, see
+    // UserStateChangedEvent#orderTime
+    private record Entry(Session session, long changedAt) {
+    }
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        for (Object[] row : userRepository.findActiveSessions()) {
+            Session session = new Session((Long) row[1], (Long) row[2]);
+            // Events that arrived during the query are newer than what it read
+            entries.merge((Long) row[0], new Entry(session, session.startTime()),
+                    (current, loaded) -> loaded.changedAt() >= current.changedAt() ? loaded : current);
+        }
+        log.info("Active session registry loaded with {} sessions", size());
+    }
+
+    // The user's running session, or null when they are idle
+    public Session get(Long userId) {
+        Entry entry = entries.get(userId);
+        return entry == null ? null : entry.session();
+    }
+
+    public int size() {
+        return (int) entries.values().stream().filter(entry -> entry.session() != null).count();
+    }
+
+    // Time the user's running session has counted towards the given day so far: zero unless
+    // it started on that day and its task is counted
+    public long liveDuration(Long userId, String date, long now) {
+        Session session = get(userId);
+        return session == null || now <= session.startTime() || !countsTowards(session, date)
+                ? 0L
+                : now - session.startTime();
+    }
+
+    // Start of the user's running session if it counts towards the given day, otherwise null
+    public Long countedStart(Long userId, String date) {
+        Session session = get(userId);
+        return session != null && countsTowards(session, date) ? session.startTime() : null;
+    }
+
+    // The same for every user whose running session counts towards the given day
+    public Map<Long, Long> countedStarts(String date) {
+        Map<Long, Long> result = new HashMap<>();
+        entries.forEach((userId, entry) -> {
+            if (entry.session() != null && countsTowards(entry.session(), date)) {
+                result.put(userId, entry.session().startTime());
+            }
+        });
+        return result;
+    }
+
+    private boolean countsTowards(Session session, String date) {
+        if (!LogicalDay.of(session.startTime()).equals(date)) return false;
+        TaskMetadataCache.TaskMeta task = taskMetadataCache.get(session.taskId());
+        return task != null && task.counted();
+    }
+
+    @EventListener
+    public void onUserStateChanged(UserStateChangedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> {
+            if (!committed) return;
+            Session session = event.currentTaskId() == null || event.currentTaskStartTime() == null
+                    ? null
+                    : new Session(event.currentTaskId(), event.currentTaskStartTime());
+            entries.compute(event.userId(), (userId, current) ->
+                    current != null && event.changedAt() != null && event.changedAt() < current.changedAt()
+                            ? current
+                            : new Entry(session, event.orderTime()));
+            eventPublisher.publishEvent(new ActiveSessionChangedEvent(event.userId()));
+        });
+    }
+}
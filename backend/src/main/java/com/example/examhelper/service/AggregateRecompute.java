@@ -0,0 +1,396 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.dto.RecomputeProgress;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.Serial;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Recomputes every user's per-day totals from all of time_records into user_day_totals, the
+// summary the day-total loads read (see UserDayTotalRepository). Records are counted by
+// their own counted flag, the same one every other total filters on, so a swap never changes
+// what readers get, only how much they read; there is nothing to evict afterwards. Each run
+// first brings tasks.counted and time_records.counted in line with Task#isCounted (see
+// CountedFlagChecker), so the totals follow the one rule even where a flag had drifted.
+//
+// The id range of time_records is cut into fixed partitions that a fork-join pool scans in
+// parallel, one query and connection per partition, each summing into a DayTotalsMap that is
+// merged on join. The result is written to user_day_totals as a new generation and swapped
+// in by updating its summary_generation row, so readers never see a half-written run.
+//
+// A run only totals days that closed at least a day before it started; later days are read
+// from time_records (see UserDayTotalRepository). Covered days still change through record
+// edits, imports and counted-flag repairs, which call invalidate: readers then fall back to
+// time_records until the next run, and a run that was scanning does not swap. A change
+// confined to one user (a task's counted flag) calls refreshUser instead, which rewrites
+// just that user's rows of the current generation.
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class AggregateRecompute {
+
+    static final String SUMMARY_NAME = "user_day_totals";
+    private static final String LOCK_NAME = "recomputeAggregates";
+    private static final Duration LOCK_AT_MOST = Duration.ofHours(2);
+    // Users whose rows one statement deletes when dropping a generation
+    private static final int USERS_PER_DELETE = 100;
+
+    public enum State {
+        IDLE, REFRESHING, SCANNING, SWAPPING, DONE, FAILED
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ClusterJobLock clusterJobLock;
+    private final CountedFlagChecker countedFlagChecker;
+    private final int partitionSize;
+    private final int parallelism;
+    private final int batchSize;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "aggregate-recompute");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Progress of the current or last run
+    private volatile State state = State.IDLE;
+    private volatile Long generation;
+    private volatile String error;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile int partitionsTotal;
+    private final AtomicInteger partitionsDone = new AtomicInteger();
+    private final AtomicLong rowsScanned = new AtomicLong();
+    private volatile long groups;
+
+    public AggregateRecompute(DataSource dataSource, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                              ClusterJobLock clusterJobLock,
+                              // Lazy: the checker invalidates the summary after repairs
+                              @Lazy CountedFlagChecker countedFlagChecker,
+                              @Value("${app.recompute.partition-size:100000}") int partitionSize,
+                              @Value("${app.recompute.parallelism:4}") int parallelism,
+                              @Value("${app.recompute.fetch-size:5000}") int fetchSize,
+                              @Value("${app.recompute.batch-size:2000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        // A partition is bounded by partitionSize ids, so drivers that ignore a positive fetch
+        // size (MySQL without useCursorFetch) buffer at most one partition per thread
+        this.cursorTemplate = new JdbcTemplate(dataSource);
+        this.cursorTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = transactionTemplate;
+        this.clusterJobLock = clusterJobLock;
+        this.countedFlagChecker = countedFlagChecker;
+        this.partitionSize = partitionSize;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    // Starts a run in the background unless one is already running here
+    public RecomputeProgress start() {
+        if (!running.compareAndSet(false, true)) {
+            return progress();
+        }
+        reset(State.REFRESHING);
+        runner.execute(() -> {
+            try {
+                boolean ran = clusterJobLock.runExclusively(LOCK_NAME, LOCK_AT_MOST, Duration.ZERO, this::recomputeAndSwap);
+                if (!ran) {
+                    fail("Another node is already recomputing");
+                }
+            } catch (RuntimeException e) {
+                log.error("Aggregate recompute failed", e);
+                fail(e.toString());
+            } finally {
+                running.set(false);
+            }
+        });
+        return progress();
+    }
+
+    // The row has to exist before a change can invalidate it; see invalidate
+    @PostConstruct
+    public void init() {
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM summary_generation WHERE name = ?",
+                Integer.class, SUMMARY_NAME);
+        if (rows != null && rows > 0) return;
+        try {
+            jdbcTemplate.update("INSERT INTO summary_generation (name, generation, version) VALUES (?, 0, 0)", SUMMARY_NAME);
+        } catch (DuplicateKeyException e) {
+            // Another node created it first
+        }
+    }
+
+    // Records from fromDay on (all of them when null) changed in a way the current generation
+    // does not reflect. If a run may cover that day, the generation is dropped and a running
+    // scan will not swap. Call it within the transaction that made the change or after it
+    // committed, never before.
+    public void invalidate(LocalDate fromDay) {
+        if (fromDay != null && !fromDay.isBefore(coveredBefore(System.currentTimeMillis()))) return;
+        jdbcTemplate.update("UPDATE summary_generation SET generation = 0, version = version + 1 WHERE name = ?",
+                SUMMARY_NAME);
+    }
+
+    // The user's records changed on any day, e.g. their task's counted flag was copied to
+    // them: rewrites the user's rows of the current generation from time_records, leaving
+    // everyone else's alone, and keeps a running scan from swapping. Must run in the
+    // transaction that made the change; the version update holds the generation row, so no
+    // swap or invalidation can interleave.
+    public void refreshUser(Long userId) {
+        jdbcTemplate.update("UPDATE summary_generation SET version = version + 1 WHERE name = ?", SUMMARY_NAME);
+        long current = currentGeneration();
+        if (current == 0) return;
+        jdbcTemplate.update("DELETE FROM user_day_totals WHERE generation = ? AND user_id = ?", current, userId);
+        // Same totals as a run's scan: NULL counted reads as not counted
+        jdbcTemplate.update(
+                "INSERT INTO user_day_totals (generation, user_id, record_day, counted_duration, total_duration, record_count) " +
+                "SELECT g.generation, t.user_id, t.record_day, " +
+                "SUM(CASE WHEN t.counted = TRUE THEN t.duration ELSE 0 END), SUM(t.duration), COUNT(*) " +
+                "FROM time_records t JOIN summary_generation g ON g.name = ? " +
+                "WHERE t.user_id = ? AND t.record_day < g.through_day " +
+                "GROUP BY g.generation, t.user_id, t.record_day",
+                SUMMARY_NAME, userId);
+    }
+
+    // First day a run starting at now leaves to time_records. The day before was closed by
+    // this morning's settlement, whose records may still be arriving when a run starts.
+    private static LocalDate coveredBefore(long now) {
+        return LogicalDay.dateOf(now).minusDays(1);
+    }
+
+    public RecomputeProgress progress() {
+        long end = finishedAt != 0 ? finishedAt : System.currentTimeMillis();
+        long elapsedMs = startedAt == 0 ? 0 : Math.max(1, end - startedAt);
+        long rows = rowsScanned.get();
+        return new RecomputeProgress(state.name(), generation, partitionsDone.get(), partitionsTotal, rows, groups,
+                elapsedMs, elapsedMs == 0 ? 0 : rows * 1000L / elapsedMs, error);
+    }
+
+    @PreDestroy
+    public void stop() {
+        runner.shutdownNow();
+    }
+
+    void recomputeAndSwap() {
+        // Chunked and committed per chunk like the scheduled check. A repair invalidates the
+        // current generation, so it is done before the version is read.
+        state = State.REFRESHING;
+        countedFlagChecker.check(true);
+
+        // Read before scanning, so an invalidation during the scan prevents the swap
+        long version = jdbcTemplate.queryForObject("SELECT version FROM summary_generation WHERE name = ?",
+                Long.class, SUMMARY_NAME);
+        LocalDate throughDay = coveredBefore(System.currentTimeMillis());
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM time_records", Long.class);
+        long throughId = maxId == null ? 0 : maxId;
+        DayTotalsMap totals = aggregate(throughId, throughDay);
+
+        state = State.SWAPPING;
+        Long swapped = swap(totals, throughDay, version);
+        if (swapped == null) {
+            fail("Records before " + throughDay + " changed during the run, start it again");
+            log.warn("Aggregate recompute discarded: {}", error);
+            return;
+        }
+        generation = swapped;
+        state = State.DONE;
+        finishedAt = System.currentTimeMillis();
+        log.info("Aggregate recompute: {} rows in {} partitions, {} user days, generation {} in {} ms",
+                rowsScanned.get(), partitionsTotal, totals.size(), generation, finishedAt - startedAt);
+    }
+
+    // Totals of every record with an id up to throughId and a day before throughDay, keyed
+    // by (user, day)
+    DayTotalsMap aggregate(long throughId, LocalDate throughDay) {
+        reset(State.SCANNING);
+        Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM time_records", Long.class);
+        if (minId == null || minId > throughId) {
+            groups = 0;
+            return new DayTotalsMap(16);
+        }
+        long span = throughId - minId + 1;
+        int partitions = (int) ((span + partitionSize - 1) / partitionSize);
+        partitionsTotal = partitions;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            DayTotalsMap totals = pool.invoke(new Partitions(minId, throughId, Date.valueOf(throughDay), 0, partitions - 1));
+            groups = totals.size();
+            return totals;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Partitions first..last of the id range; splits in halves down to single partitions.
+    // Leaves block on JDBC, which is fine in a pool of our own sized to the connection pool.
+    private final class Partitions extends RecursiveTask<DayTotalsMap> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final long minId;
+        private final long maxId;
+        private final Date throughDay;
+        private final int first;
+        private final int last;
+
+        Partitions(long minId, long maxId, Date throughDay, int first, int last) {
+            this.minId = minId;
+            this.maxId = maxId;
+            this.throughDay = throughDay;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected DayTotalsMap compute() {
+            if (first == last) {
+                long from = minId + (long) first * partitionSize;
+                return scan(from, Math.min(maxId, from + partitionSize - 1), throughDay);
+            }
+            int middle = (first + last) >>> 1;
+            Partitions left = new Partitions(minId, maxId, throughDay, first, middle);
+            left.fork();
+            DayTotalsMap right = new Partitions(minId, maxId, throughDay, middle + 1, last).compute();
+            DayTotalsMap joined = left.join();
+            // Merge the smaller map into the larger one
+            if (joined.size() < right.size()) {
+                right.merge(joined);
+                return right;
+            }
+            joined.merge(right);
+            return joined;
+        }
+    }
+
+    private DayTotalsMap scan(long fromId, long toId, Date throughDay) {
+        DayTotalsMap totals = new DayTotalsMap(1024);
+        long[] rows = {0};
+        cursorTemplate.query(
+                "SELECT user_id, duration, record_day, counted FROM time_records WHERE id BETWEEN ? AND ? AND record_day < ?",
+                rs -> {
+                    rows[0]++;
+                    // A counted flag not backfilled yet (NULL) reads as false, as in the queries
+                    totals.add(DayTotalsMap.key(rs.getLong(1), rs.getObject(3, LocalDate.class).toEpochDay()),
+                            rs.getLong(2), rs.getBoolean(4));
+                },
+                fromId, toId, throughDay);
+        rowsScanned.addAndGet(rows[0]);
+        int done = partitionsDone.incrementAndGet();
+        int total = partitionsTotal;
+        if (done == total || done % Math.max(1, total / 10) == 0) {
+            log.info("Aggregate recompute: {}/{} partitions, {} rows", done, total, rowsScanned.get());
+        }
+        return totals;
+    }
+
+    // Writes the totals as a new generation and makes it current unless the version moved on
+    // since the run started, then drops every other generation. Null when it was not made current.
+    private Long swap(DayTotalsMap totals, LocalDate throughDay, long version) {
+        Long latest = jdbcTemplate.queryForObject("SELECT MAX(generation) FROM user_day_totals", Long.class);
+        long current = currentGeneration();
+        // Above anything a failed run may have left behind
+        long next = Math.max(latest == null ? 0 : latest, current) + 1;
+
+        List<Row> batch = new ArrayList<>(batchSize);
+        totals.forEachSorted((key, counted, total, records) -> {
+            batch.add(new Row(DayTotalsMap.userId(key), Date.valueOf(LocalDate.ofEpochDay(DayTotalsMap.epochDay(key))),
+                    counted, total, records));
+            if (batch.size() == batchSize) {
+                insert(next, batch);
+                batch.clear();
+            }
+        });
+        insert(next, batch);
+
+        int updated = jdbcTemplate.update(
+                "UPDATE summary_generation SET generation = ?, through_day = ?, version = version + 1, completed_at = ? " +
+                "WHERE name = ? AND version = ?",
+                next, Date.valueOf(throughDay), Timestamp.valueOf(LocalDateTime.now()), SUMMARY_NAME, version);
+        dropGenerationsExcept(updated == 1 ? next : currentGeneration());
+        return updated == 1 ? next : null;
+    }
+
+    private long currentGeneration() {
+        Long current = jdbcTemplate.queryForObject("SELECT generation FROM summary_generation WHERE name = ?",
+                Long.class, SUMMARY_NAME);
+        return current == null ? 0 : current;
+    }
+
+    // One primary key range of users per statement, so no long-running delete holds locks
+    // on the table. Readers that started on a dropped generation keep their snapshot.
+    private void dropGenerationsExcept(long keep) {
+        List<Long> generations = jdbcTemplate.queryForList(
+                "SELECT DISTINCT generation FROM user_day_totals WHERE generation <> ?", Long.class, keep);
+        for (Long dropped : generations) {
+            Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                    "SELECT MIN(user_id) AS min_id, MAX(user_id) AS max_id FROM user_day_totals WHERE generation = ?", dropped);
+            if (bounds.get("min_id") == null) continue;
+            long minId = ((Number) bounds.get("min_id")).longValue();
+            long maxId = ((Number) bounds.get("max_id")).longValue();
+            for (long from = minId; from <= maxId; from += USERS_PER_DELETE) {
+                jdbcTemplate.update("DELETE FROM user_day_totals WHERE generation = ? AND user_id BETWEEN ? AND ?",
+                        dropped, from, from + USERS_PER_DELETE - 1);
+            }
+        }
+    }
+
+    private record Row(long userId, Date day, long countedDuration, long totalDuration, int recordCount) {
+    }
+
+    private void insert(long generation, List<Row> batch) {
+        if (batch.isEmpty()) return;
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                "INSERT INTO user_day_totals (generation, user_id, record_day, counted_duration, total_duration, record_count) " +
+                "VALUES (?, ?, ?, ?, ?, ?)",
+                batch, batch.size(), (ps, row) -> {
+                    ps.setLong(1, generation);
+                    ps.setLong(2, row.userId());
+                    ps.setDate(3, row.day());
+                    ps.setLong(4, row.countedDuration());
+                    ps.setLong(5, row.totalDuration());
+                    ps.setInt(6, row.recordCount());
+                }));
+    }
+
+    private void reset(State initial) {
+        state = initial;
+        generation = null;
+        error = null;
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        partitionsTotal = 0;
+        partitionsDone.set(0);
+        rowsScanned.set(0);
+        groups = 0;
+    }
+
+    private void fail(String message) {
+        error = message;
+        state = State.FAILED;
+        finishedAt = System.currentTimeMillis();
+    }
+}
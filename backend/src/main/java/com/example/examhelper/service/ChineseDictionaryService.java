@@ -1,14 +1,18 @@
 package com.example.examhelper.service;
 
+import com.example.examhelper.dto.IdiomPage;
 import com.example.examhelper.model.ChineseDictionary;
 import com.example.examhelper.repository.ChineseDictionaryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ChineseDictionaryService {
@@ -16,17 +20,90 @@ public class ChineseDictionaryService {
     @Autowired
     private ChineseDictionaryRepository repository;
 
+    @Autowired
+    private IdiomIndex idiomIndex;
+
+    @Autowired
+    private IdiomSampler idiomSampler;
+
+    @Autowired
+    private IdiomPageCache idiomPageCache;
+
+    @Autowired
+    private IdiomSnapshot idiomSnapshot;
+
+    // The total and the ids of the page come from the index, so deep pages need neither
+    // OFFSET nor a COUNT(*)
     public Page<ChineseDictionary> getIdioms(int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return repository.findAll(pageable);
+        long[] ids = idiomIndex.current().ids();
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + size, ids.length);
+        return new PageImpl<>(findAllInOrder(Arrays.copyOfRange(ids, from, to)), pageable, ids.length);
+    }
+
+    // Keyset browse over the whole dictionary: size words with an id above cursor
+    public IdiomPage browseIdioms(long cursor, int size) {
+        IdiomIndex.Data data = idiomIndex.current();
+        return idiomPageCache.get(data.version(), cursor, size, () -> pageAbove(data.ids(), cursor, size));
+    }
+
+    // Changes whenever the dictionary does, so clients can revalidate browse pages cheaply
+    public String browseEtag(long cursor, int size) {
+        return "\"" + idiomIndex.current().stamp() + "-" + cursor + "-" + size + "\"";
     }
 
+    // Matches come from the in-memory index; only the rows of the page are read, by id
     public Page<ChineseDictionary> searchIdioms(String keyword, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return repository.findByWordContaining(keyword, pageable);
+        long[] ids = idiomIndex.search(keyword).ids();
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + size, ids.length);
+        return new PageImpl<>(findAllInOrder(Arrays.copyOfRange(ids, from, to)), pageable, ids.length);
+    }
+
+    // Words containing the keyword (or with matching pinyin initials) and an id above cursor
+    public IdiomPage searchIdioms(String keyword, long cursor, int size) {
+        return pageAbove(idiomIndex.search(keyword).ids(), cursor, size);
     }
 
     public List<ChineseDictionary> getRandomIdioms(int limit) {
-        return repository.findRandom(limit);
+        return findAllInOrder(idiomSampler.sample(limit));
+    }
+
+    public List<ChineseDictionary> getDailyIdioms(int limit) {
+        return findAllInOrder(idiomSampler.daily(limit));
+    }
+
+    static int firstAbove(long[] sortedIds, long cursor) {
+        int pos = Arrays.binarySearch(sortedIds, cursor);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    private IdiomPage pageAbove(long[] ids, long cursor, int size) {
+        int from = firstAbove(ids, cursor);
+        int to = Math.min(from + size, ids.length);
+        Long nextCursor = to < ids.length && to > from ? ids[to - 1] : null;
+        return new IdiomPage(findAllInOrder(Arrays.copyOfRange(ids, from, to)), nextCursor, ids.length);
+    }
+
+    // Rows are decoded from the snapshot while it matches the table, and read from MySQL otherwise
+    private List<ChineseDictionary> findAllInOrder(long[] ids) {
+        if (ids.length == 0) return List.of();
+        IdiomSnapshot.View view = idiomSnapshot.view(idiomIndex.current().stamp());
+        if (view != null) {
+            List<ChineseDictionary> entries = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                ChineseDictionary entry = view.find(id);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        }
+        List<Long> idList = Arrays.stream(ids).boxed().toList();
+        Map<Long, ChineseDictionary> byId = repository.findAllById(idList).stream()
+                .collect(Collectors.toMap(ChineseDictionary::getId, Function.identity()));
+        return idList.stream().map(byId::get).filter(Objects::nonNull).toList();
     }
 }
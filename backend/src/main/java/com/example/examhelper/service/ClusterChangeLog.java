@@ -0,0 +1,227 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.ClusterEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Keeps the in-process caches of several nodes coherent. Every ClusterEvent is written to
+// cluster_change_log in the transaction that publishes it, so it is visible exactly when the
+// change itself is; the events of one transaction are buffered and go in as one batch just
+// before it commits. Each node polls the table and publishes the other nodes' events again
+// locally, where the usual listeners apply them: deltas, evictions, status pushes.
+//
+// Ids are handed out before commit, so a poll can see id n + 1 while n is still in flight.
+// Everything up to the watermark has been handled; ids seen above it are remembered, and a
+// missing id is waited for up to gap-timeout (a rollback never fills it). Each poll reads the
+// rows past the highest id seen plus the missing ids, so an open gap never holds back newer
+// rows.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterChangeLog {
+
+    private static final String EVENT_PACKAGE = ClusterEvent.class.getPackageName() + ".";
+    private static final int POLL_LIMIT = 500;
+    private static final ThreadLocal<Boolean> REPLAYING = new ThreadLocal<>();
+
+    private record Entry(String eventType, String payload) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ClusterNode clusterNode;
+    private final ClusterJobLock clusterJobLock;
+
+    @Value("${app.cluster.retention:PT1H}")
+    private Duration retention;
+
+    @Value("${app.cluster.gap-timeout:PT30S}")
+    private Duration gapTimeout;
+
+    // Key of the current transaction's buffered entries
+    private final Object bufferKey = new Object();
+
+    // Guarded by this
+    private long watermark;
+    private final TreeSet<Long> handled = new TreeSet<>();
+    private long gapSince;
+
+    @PostConstruct
+    public void start() {
+        if (!clusterNode.isEnabled()) return;
+        // Caches start empty and load from the DB, so only later changes matter
+        Long lastId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM cluster_change_log", Long.class);
+        watermark = lastId == null ? 0 : lastId;
+        log.info("Following the cluster change log from id {}", watermark);
+    }
+
+    // True while a listener is handling an event from another node; listeners with effects
+    // that belong to the node where the change happened (metrics, for one) skip those
+    public static boolean isReplaying() {
+        return REPLAYING.get() != null;
+    }
+
+    @EventListener
+    public void onEvent(ClusterEvent event) {
+        if (!clusterNode.isEnabled() || isReplaying()) return;
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + event.getClass().getSimpleName(), e);
+        }
+        Entry entry = new Entry(event.getClass().getSimpleName(), payload);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            insert(List.of(entry));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Entry> buffer = (List<Entry>) TransactionSynchronizationManager.getResource(bufferKey);
+        if (buffer == null) {
+            buffer = bindBuffer();
+        }
+        buffer.add(entry);
+    }
+
+    private List<Entry> bindBuffer() {
+        List<Entry> buffer = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(bufferKey, buffer);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                insert(buffer);
+                buffer.clear();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(bufferKey);
+                // Published by a synchronization that ran after ours; better late than never
+                if (status == STATUS_COMMITTED && !buffer.isEmpty()) {
+                    insert(buffer);
+                }
+            }
+        });
+        return buffer;
+    }
+
+    private void insert(List<Entry> entries) {
+        if (entries.isEmpty()) return;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate("INSERT INTO cluster_change_log (origin, event_type, payload, created_at) VALUES (?, ?, ?, ?)",
+                entries, entries.size(), (ps, entry) -> {
+                    ps.setString(1, clusterNode.id());
+                    ps.setString(2, entry.eventType());
+                    ps.setString(3, entry.payload());
+                    ps.setTimestamp(4, now);
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${app.cluster.poll-interval:PT1S}")
+    public synchronized void poll() {
+        if (!clusterNode.isEnabled()) return;
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<Long> missing = missingIds();
+        if (!missing.isEmpty()) {
+            rows.addAll(jdbcTemplate.queryForList(
+                    "SELECT id, origin, event_type, payload FROM cluster_change_log WHERE id IN (" +
+                    String.join(",", Collections.nCopies(missing.size(), "?")) + ") ORDER BY id",
+                    missing.toArray()));
+        }
+        rows.addAll(jdbcTemplate.queryForList(
+                "SELECT id, origin, event_type, payload FROM cluster_change_log WHERE id > ? ORDER BY id LIMIT " + POLL_LIMIT,
+                handled.isEmpty() ? watermark : handled.last()));
+        int replayed = 0;
+        for (Map<String, Object> row : rows) {
+            long id = ((Number) row.get("id")).longValue();
+            if (!handled.add(id) || clusterNode.id().equals(row.get("origin"))) continue;
+            replay((String) row.get("event_type"), (String) row.get("payload"));
+            replayed++;
+        }
+        advanceWatermark();
+        if (replayed > 0) {
+            log.debug("Replayed {} events from other nodes", replayed);
+        }
+    }
+
+    private void replay(String eventType, String payload) {
+        REPLAYING.set(Boolean.TRUE);
+        try {
+            Class<?> eventClass = Class.forName(EVENT_PACKAGE + eventType);
+            if (!ClusterEvent.class.isAssignableFrom(eventClass)) {
+                throw new IllegalArgumentException("not a cluster event");
+            }
+            eventPublisher.publishEvent(objectMapper.readValue(payload, eventClass));
+        } catch (Exception e) {
+            // One bad entry must not stall the log; the affected cache heals on its next reload
+            log.warn("Could not replay {} from the cluster change log: {}", eventType, e.toString());
+        } finally {
+            REPLAYING.remove();
+        }
+    }
+
+    // Ids between the watermark and the highest id seen that have not shown up yet
+    private List<Long> missingIds() {
+        List<Long> missing = new ArrayList<>();
+        long next = watermark + 1;
+        for (long id : handled) {
+            for (; next < id && missing.size() < POLL_LIMIT; next++) {
+                missing.add(next);
+            }
+            if (missing.size() == POLL_LIMIT) break;
+            next = id + 1;
+        }
+        return missing;
+    }
+
+    private void advanceWatermark() {
+        while (!handled.isEmpty()) {
+            if (handled.first() == watermark + 1) {
+                watermark = handled.pollFirst();
+                gapSince = 0;
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            if (gapSince == 0) {
+                gapSince = now;
+            }
+            if (now - gapSince < gapTimeout.toMillis()) return;
+            log.debug("Skipping change log ids {} to {}, never committed", watermark + 1, handled.first() - 1);
+            watermark = handled.first() - 1;
+            gapSince = 0;
+        }
+    }
+
+    @Scheduled(cron = "0 */10 * * * ?")
+    public void prune() {
+        if (!clusterNode.isEnabled()) return;
+        clusterJobLock.runExclusively("pruneChangeLog", Duration.ofMinutes(5), Duration.ofMinutes(1), () -> {
+            int deleted = jdbcTemplate.update("DELETE FROM cluster_change_log WHERE created_at < ?",
+                    Timestamp.valueOf(LocalDateTime.now().minus(retention)));
+            log.debug("Pruned {} cluster change log entries", deleted);
+        });
+    }
+}
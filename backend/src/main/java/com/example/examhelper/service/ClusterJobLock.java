@@ -0,0 +1,92 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+// Makes a scheduled job run on one node per firing when several instances share the DB. The
+// node that moves the job's job_lock row forward runs the job; the others skip this firing.
+//
+// The lease is held for at least lockAtLeastFor, so a node whose schedule fires a little
+// later (clock skew, a busy scheduler) does not run the job a second time; it must be shorter
+// than the job's period. A node that dies mid-run blocks the job for lockAtMostFor. Nodes
+// compare their own clocks against the lease, so they need to be NTP-synchronized.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterJobLock {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ClusterNode clusterNode;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        // Lock changes commit on their own, even when the job runs inside a transaction
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Runs the job unless another node holds its lock; returns whether it ran. Always runs
+    // it with clustering off.
+    public boolean runExclusively(String name, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable job) {
+        if (!clusterNode.isEnabled()) {
+            job.run();
+            return true;
+        }
+        long started = System.currentTimeMillis();
+        if (!acquire(name, started, started + lockAtMostFor.toMillis())) {
+            log.debug("Skipping {}, another node holds its lock", name);
+            return false;
+        }
+        try {
+            job.run();
+        } finally {
+            // Inside a transaction the lock is kept until the job's writes are committed
+            long until = started + lockAtLeastFor.toMillis();
+            TransactionCallbacks.onCompletion(committed -> release(name, until));
+        }
+        return true;
+    }
+
+    private boolean acquire(String name, long now, long until) {
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                int updated = jdbcTemplate.update(
+                        "UPDATE job_lock SET locked_by = ?, locked_at = ?, locked_until = ? WHERE name = ? AND locked_until <= ?",
+                        clusterNode.id(), now, until, name, now);
+                if (updated > 0) return true;
+                Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job_lock WHERE name = ?", Integer.class, name);
+                if (rows != null && rows > 0) return false;
+                jdbcTemplate.update("INSERT INTO job_lock (name, locked_by, locked_at, locked_until) VALUES (?, ?, ?, ?)",
+                        name, clusterNode.id(), now, until);
+                return true;
+            }));
+        } catch (DuplicateKeyException e) {
+            return false; // another node created the row first
+        }
+    }
+
+    private void release(String name, long until) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                    "UPDATE job_lock SET locked_until = ? WHERE name = ? AND locked_by = ?",
+                    Math.max(until, System.currentTimeMillis()), name, clusterNode.id()));
+        } catch (DataAccessException e) {
+            // The lease still runs out at lockAtMostFor
+            log.warn("Could not release job lock {}: {}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.examhelper.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+// This instance in a multi-node deployment (app.cluster.enabled). Off by default: a single
+// node needs neither job locks nor the change log, and then both do nothing.
+@Component
+@Slf4j
+public class ClusterNode {
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${app.write-behind.enabled:false}")
+    private boolean writeBehind;
+
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.isBlank()) {
+            // The write-behind checkpoint is kept per node id, so a random one would lose it
+            if (enabled && writeBehind) {
+                throw new IllegalStateException("app.cluster.node-id must be set when write-behind is enabled in a cluster");
+            }
+            nodeId = UUID.randomUUID().toString().substring(0, 8);
+        }
+        if (!enabled) return;
+        log.info("Clustering enabled, node id {}", nodeId);
+        if (writeBehind) {
+            log.warn("Task switch write-behind keeps unflushed switches on this node; other nodes see them up to max-delay late");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String id() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.model.Task;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+// Fills tasks.counted and time_records.counted for rows written before the columns existed,
+// during startup like RecordDayBackfill. Task flags come from Task#isCounted; records then
+// copy their task's flag in id ranges, one statement each. Once every row has a value this
+// is two queries.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class CountedFlagBackfill {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.backfill.chunk-size:10000}")
+    private int chunkSize;
+
+    @PostConstruct
+    public void run() {
+        List<Task> tasks = jdbcTemplate.query("SELECT id, user_id, records_tag FROM tasks WHERE counted IS NULL", (rs, rowNum) -> {
+            Task task = new Task();
+            task.setId(rs.getLong(1));
+            task.setUserId(rs.getObject(2, Long.class));
+            task.setRecordsTag(rs.getObject(3, Boolean.class));
+            return task;
+        });
+        if (!tasks.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE tasks SET counted = ? WHERE id = ?", tasks, tasks.size(), (ps, task) -> {
+                ps.setBoolean(1, task.isCounted());
+                ps.setLong(2, task.getId());
+            });
+            log.info("Backfilled counted for {} tasks", tasks.size());
+        }
+
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM time_records WHERE counted IS NULL");
+        if (bounds.get("min_id") == null) return;
+
+        long minId = ((Number) bounds.get("min_id")).longValue();
+        long maxId = ((Number) bounds.get("max_id")).longValue();
+        long started = System.currentTimeMillis();
+        long updated = 0;
+        for (long from = minId; from <= maxId; from += chunkSize) {
+            updated += jdbcTemplate.update(
+                    "UPDATE time_records SET counted = COALESCE((SELECT t.counted FROM tasks t WHERE t.id = time_records.task_id), FALSE) " +
+                    "WHERE counted IS NULL AND id BETWEEN ? AND ?",
+                    from, from + chunkSize - 1);
+        }
+        log.info("Backfilled counted for {} time records in {} ms", updated, System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.dto.CountedCheckResult;
+import com.example.examhelper.event.TimeRecordsInvalidatedEvent;
+import com.example.examhelper.model.Task;
+import com.example.examhelper.repository.TaskRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+// Verifies the materialized counted flags: tasks.counted against Task#isCounted, then each
+// time_records.counted against its task's flag (false for tasks that no longer exist). A
+// record can drift when its task's tag changes while the record is being written from an
+// older cached flag. Records are checked in id ranges, one statement each; with repair on,
+// mismatches are fixed in place and the affected users' cached totals are evicted.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CountedFlagChecker {
+
+    private static final String RECORD_MISMATCH =
+            "(tr.counted IS NULL OR tr.counted <> COALESCE((SELECT t.counted FROM tasks t WHERE t.id = tr.task_id), FALSE))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskRepository taskRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ClusterJobLock clusterJobLock;
+    private final AggregateRecompute aggregateRecompute;
+
+    @Value("${app.counted-check.chunk-size:10000}")
+    private int chunkSize;
+
+    @Value("${app.counted-check.repair:true}")
+    private boolean repairOnSchedule;
+
+    // After the 4 AM settlement has written the night's records
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void checkDaily() {
+        clusterJobLock.runExclusively("checkCountedFlags", Duration.ofHours(1), Duration.ofMinutes(1),
+                () -> check(repairOnSchedule));
+    }
+
+    public CountedCheckResult check(boolean repair) {
+        long started = System.currentTimeMillis();
+
+        // Tasks first: with repair on, records are then compared against the corrected flags
+        List<Task> tasks = taskRepository.findAll();
+        List<Task> wrongTasks = tasks.stream()
+                .filter(task -> !Objects.equals(task.getCounted(), task.isCounted()))
+                .toList();
+        if (repair && !wrongTasks.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE tasks SET counted = ? WHERE id = ?", wrongTasks, wrongTasks.size(), (ps, task) -> {
+                ps.setBoolean(1, task.isCounted());
+                ps.setLong(2, task.getId());
+            });
+        }
+
+        Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM time_records");
+        long checked = 0;
+        long mismatches = 0;
+        Set<Long> affectedUsers = new HashSet<>();
+        if (bounds.get("min_id") != null) {
+            long minId = ((Number) bounds.get("min_id")).longValue();
+            long maxId = ((Number) bounds.get("max_id")).longValue();
+            for (long from = minId; from <= maxId; from += chunkSize) {
+                long to = from + chunkSize - 1;
+                Map<String, Object> counts = jdbcTemplate.queryForMap(
+                        "SELECT COUNT(*) AS checked, SUM(CASE WHEN " + RECORD_MISMATCH + " THEN 1 ELSE 0 END) AS mismatches " +
+                        "FROM time_records tr WHERE tr.id BETWEEN ? AND ?",
+                        from, to);
+                checked += ((Number) counts.get("checked")).longValue();
+                long found = counts.get("mismatches") == null ? 0 : ((Number) counts.get("mismatches")).longValue();
+                if (found == 0) continue;
+                mismatches += found;
+                if (repair) {
+                    affectedUsers.addAll(jdbcTemplate.queryForList(
+                            "SELECT DISTINCT tr.user_id FROM time_records tr WHERE tr.id BETWEEN ? AND ? AND " + RECORD_MISMATCH,
+                            Long.class, from, to));
+                    jdbcTemplate.update(
+                            "UPDATE time_records SET counted = COALESCE((SELECT t.counted FROM tasks t WHERE t.id = time_records.task_id), FALSE) " +
+                            "WHERE id BETWEEN ? AND ? AND (counted IS NULL OR counted <> " +
+                            "COALESCE((SELECT t.counted FROM tasks t WHERE t.id = time_records.task_id), FALSE))",
+                            from, to);
+                }
+            }
+        }
+        if (repair && mismatches > 0) {
+            aggregateRecompute.invalidate(null);
+        }
+        for (Long userId : affectedUsers) {
+            eventPublisher.publishEvent(new TimeRecordsInvalidatedEvent(userId));
+        }
+
+        CountedCheckResult result = new CountedCheckResult(tasks.size(), wrongTasks.size(), checked, mismatches, repair,
+                System.currentTimeMillis() - started);
+        if (wrongTasks.isEmpty() && mismatches == 0) {
+            log.info("Counted flags consistent: {} tasks, {} time records in {} ms", tasks.size(), checked, result.elapsedMs());
+        } else {
+            log.warn("Counted flags inconsistent: {} of {} tasks, {} of {} time records{}", wrongTasks.size(), tasks.size(),
+                    mismatches, checked, repair ? ", repaired" : "");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.ActiveSessionChangedEvent;
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.TimeRecordsInvalidatedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.event.UserRegisteredEvent;
+import com.example.examhelper.model.TimeRecord;
+import com.example.examhelper.model.User;
+import com.example.examhelper.repository.UserDayTotalRepository;
+import com.example.examhelper.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process ranking of users by counted duration per logical day. A day's board is built
+// once from UserDayTotalRepository#findUserDurationsByDate and then maintained from record
+// writes, so rank and top-N lookups never hit the DB. Boards of days closed by the 4 AM
+// settlement are frozen.
+//
+// Ranks include the running sessions as if they ended now. A session adds now - start to
+// its user's settled total, the same now for everyone, so a board also keeps the users with
+// a session counting towards its day ordered by settled - start: the users a total T has
+// behind it are then one lookup for T - now, whatever the number of sessions. Boards follow
+// the sessions through ActiveSessionChangedEvent.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DailyLeaderboard {
+
+    private final UserDayTotalRepository userDayTotalRepository;
+    private final UserRepository userRepository;
+    private final ActiveSessionRegistry activeSessionRegistry;
+
+    @Value("${app.leaderboard.max-days:3}")
+    private int maxDays;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Board> boards = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Board> eldest) {
+            return size() > maxDays && eldest.getValue().pendingWrites == 0;
+        }
+    };
+
+    private final Map<Long, String> userNames = new ConcurrentHashMap<>();
+    private final AtomicLong totalUsers = new AtomicLong(-1);
+
+    // 1-based rank of the user on the given day, or -1 if they have no counted time. Ranked
+    // as if the running sessions ended at now. Users with equal totals share a rank.
+    public int rankOf(String date, Long userId, long now) {
+        synchronized (this) {
+            Board board = boards.get(date);
+            if (board != null && board.loaded) {
+                return board.rankOf(userId, now);
+            }
+        }
+        Board loaded = load(date, false);
+        synchronized (this) {
+            return loaded.rankOf(userId, now);
+        }
+    }
+
+    public List<Long> top(String date, int n) {
+        synchronized (this) {
+            Board board = boards.get(date);
+            if (board != null && board.loaded) {
+                return board.ranks.first(n);
+            }
+        }
+        return load(date, false).ranks.first(n);
+    }
+
+    public long totalUsers() {
+        long count = totalUsers.get();
+        if (count < 0) {
+            count = userRepository.count();
+            totalUsers.compareAndSet(-1, count);
+        }
+        return count;
+    }
+
+    public Map<Long, String> userNames(Collection<Long> userIds) {
+        List<Long> missing = userIds.stream().filter(id -> !userNames.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            for (User user : userRepository.findAllById(missing)) {
+                userNames.put(user.getId(), user.getUsername());
+            }
+        }
+        Map<Long, String> result = new HashMap<>();
+        for (Long id : userIds) {
+            result.put(id, userNames.getOrDefault(id, "Unknown"));
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onUserRegistered(UserRegisteredEvent event) {
+        TransactionCallbacks.onCompletion(committed -> {
+            if (!committed) return;
+            userNames.put(event.userId(), event.username());
+            totalUsers.updateAndGet(count -> count < 0 ? count : count + 1);
+        });
+    }
+
+    // Rebuilds the board of a closed day from the DB and stops applying deltas to it.
+    // Called once the settlement that closed the day has committed.
+    public void freeze(String date) {
+        load(date, true);
+        log.info("Froze leaderboard for {}", date);
+    }
+
+    private Board load(String date, boolean frozen) {
+        Board tracked;
+        long version;
+        boolean cacheable;
+        synchronized (this) {
+            tracked = boards.computeIfAbsent(date, d -> Board.placeholder());
+            version = tracked.version;
+            cacheable = tracked.pendingWrites == 0;
+        }
+
+        Board loaded = new Board(frozen);
+        for (Object[] row : userDayTotalRepository.findUserDurationsByDate(LocalDate.parse(date))) {
+            loaded.add(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+
+        synchronized (this) {
+            Board current = boards.get(date);
+            // A frozen board ignores deltas, so it can replace whatever is there; otherwise only
+            // keep the result if no write touched this day while we were reading
+            boolean unchanged = current == tracked && tracked.version == version;
+            if (frozen || (cacheable && unchanged)) {
+                if (current != null) {
+                    loaded.pendingWrites = current.pendingWrites;
+                    loaded.version = current.version + 1;
+                }
+                boards.put(date, loaded);
+            }
+            // Under the lock, so a session change after this read also updates this board
+            activeSessionRegistry.countedStarts(date).forEach(loaded::setSession);
+        }
+        return loaded;
+    }
+
+    @EventListener
+    public void onRecordSaved(TimeRecordSavedEvent event) {
+        TimeRecord record = event.record();
+        if (!Boolean.TRUE.equals(record.getCounted())) return;
+
+        String date = record.getRecordDate();
+        synchronized (this) {
+            // Days without a board still get a placeholder so in-flight loads see the write
+            Board board = boards.computeIfAbsent(date, d -> Board.placeholder());
+            board.pendingWrites++;
+            board.version++;
+        }
+        TransactionCallbacks.onCompletion(committed -> {
+            synchronized (this) {
+                Board board = boards.get(date);
+                if (board == null) return;
+                board.pendingWrites--;
+                board.version++;
+                if (committed && board.loaded && !board.frozen) {
+                    board.add(record.getUserId(), record.getDuration() == null ? 0L : record.getDuration());
+                }
+            }
+        });
+    }
+
+    // Already applied to the registry; its session is read back, so the board ends up with
+    // the latest one whatever order these arrive in
+    @EventListener
+    public void onActiveSessionChanged(ActiveSessionChangedEvent event) {
+        synchronized (this) {
+            boards.forEach((date, board) -> {
+                if (board.loaded) {
+                    board.setSession(event.userId(), activeSessionRegistry.countedStart(event.userId(), date));
+                }
+            });
+        }
+    }
+
+    @EventListener
+    public void onRecordsInvalidated(TimeRecordsInvalidatedEvent event) {
+        // Edits can move time between days, so every board is rebuilt on next access
+        TransactionCallbacks.onCompletion(committed -> {
+            synchronized (this) {
+                boards.replaceAll((date, board) -> board.invalidated());
+            }
+        });
+    }
+
+    private static class Board {
+        // Settled totals of everyone with counted time on the day, used for top()
+        private final Map<Long, Long> totals = new HashMap<>();
+        private final RankTree ranks = new RankTree();
+        // Users with a session counting towards the day: start, settled total (0 if none yet)
+        // and settled total - start
+        private final Map<Long, Long> sessionStarts = new HashMap<>();
+        private final RankTree liveBySettled = new RankTree();
+        private final RankTree liveByOffset = new RankTree();
+        private final boolean frozen;
+        private boolean loaded = true;
+        private long version;
+        private int pendingWrites;
+
+        Board(boolean frozen) {
+            this.frozen = frozen;
+        }
+
+        static Board placeholder() {
+            Board board = new Board(false);
+            board.loaded = false;
+            return board;
+        }
+
+        // Placeholder that keeps tracking the writes still in flight on this board
+        Board invalidated() {
+            Board board = placeholder();
+            board.pendingWrites = pendingWrites;
+            board.version = version + 1;
+            return board;
+        }
+
+        void add(long userId, long duration) {
+            Long previous = totals.get(userId);
+            Long start = sessionStarts.get(userId);
+            if (previous != null) {
+                ranks.remove(userId, previous);
+            }
+            if (start != null) {
+                removeLive(userId, previous == null ? 0L : previous, start);
+            }
+            long total = (previous == null ? 0L : previous) + duration;
+            totals.put(userId, total);
+            ranks.insert(userId, total);
+            if (start != null) {
+                insertLive(userId, total, start);
+            }
+        }
+
+        // start is null when the user has no session counting towards this day
+        void setSession(long userId, Long start) {
+            Long current = sessionStarts.get(userId);
+            if (Objects.equals(current, start)) return;
+            long settled = totals.getOrDefault(userId, 0L);
+            if (current != null) {
+                removeLive(userId, settled, current);
+                sessionStarts.remove(userId);
+            }
+            if (start != null) {
+                sessionStarts.put(userId, start);
+                insertLive(userId, settled, start);
+            }
+        }
+
+        private void insertLive(long userId, long settled, long start) {
+            liveBySettled.insert(userId, settled);
+            liveByOffset.insert(userId, settled - start);
+        }
+
+        private void removeLive(long userId, long settled, long start) {
+            liveBySettled.remove(userId, settled);
+            liveByOffset.remove(userId, settled - start);
+        }
+
+        // Users ahead of total: those without a session whose settled total is larger (all
+        // larger ones minus those with a session), plus those with a session whose settled
+        // total - start + now is larger. A session that starts after now (another node's clock
+        // being ahead) counts as zero for the user asking; for the others it is off by the skew.
+        int rankOf(Long userId, long now) {
+            Long settled = totals.get(userId);
+            Long start = sessionStarts.get(userId);
+            long live = start == null ? 0L : Math.max(0L, now - start);
+            if (settled == null && live == 0) return -1;
+            long total = (settled == null ? 0L : settled) + live;
+            int ahead = ranks.countAhead(Long.MIN_VALUE, total)
+                    - liveBySettled.countAhead(Long.MIN_VALUE, total)
+                    + liveByOffset.countAhead(Long.MIN_VALUE, total - now);
+            return ahead + 1;
+        }
+    }
+}
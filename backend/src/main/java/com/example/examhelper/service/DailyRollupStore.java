@@ -0,0 +1,187 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.TimeRecordsInvalidatedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.model.TimeRecord;
+import com.example.examhelper.repository.TimeRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+// Per-user, per-logical-day aggregates of time_records (task id -> summed duration and the
+// day total over counted tasks). Chart endpoints read from here instead of scanning raw rows.
+//
+// Days are loaded lazily from the DB on a miss and then kept current by applying each new
+// record as a delta once its transaction commits. Memory is bounded by an LRU over users
+// and an LRU over days within each user.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DailyRollupStore {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final TimeRecordRepository timeRecordRepository;
+
+    @Value("${app.rollup.max-users:2000}")
+    private int maxUsers;
+
+    @Value("${app.rollup.max-days-per-user:120}")
+    private int maxDaysPerUser;
+
+    // Guarded by this
+    private final LinkedHashMap<Long, UserRollup> users = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserRollup> eldest) {
+            // Never drop a user with a write in flight, otherwise a concurrent load could
+            // re-create it and count that write twice.
+            return size() > maxUsers && eldest.getValue().pendingWrites == 0;
+        }
+    };
+
+    public record DayTotals(String date, Map<Long, Long> durationByTask, long countedDuration) {
+    }
+
+    public DayTotals getDay(Long userId, String date) {
+        return getRange(userId, date, date).get(0);
+    }
+
+    // One entry per day in [startDate, endDate], empty days included
+    public List<DayTotals> getRange(Long userId, String startDate, String endDate) {
+        List<String> dates = new ArrayList<>();
+        LocalDate end = LocalDate.parse(endDate, DATE_FORMATTER);
+        for (LocalDate date = LocalDate.parse(startDate, DATE_FORMATTER); !date.isAfter(end); date = date.plusDays(1)) {
+            dates.add(date.format(DATE_FORMATTER));
+        }
+
+        Map<String, DayTotals> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        UserRollup rollup;
+        long version;
+        boolean cacheable;
+        synchronized (this) {
+            rollup = users.computeIfAbsent(userId, id -> new UserRollup(maxDaysPerUser));
+            for (String date : dates) {
+                DayRollup day = rollup.days.get(date);
+                if (day != null) {
+                    found.put(date, day.snapshot(date));
+                } else {
+                    missing.add(date);
+                }
+            }
+            version = rollup.version;
+            cacheable = rollup.pendingWrites == 0;
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, DayRollup> loaded = load(userId, missing.get(0), missing.get(missing.size() - 1));
+            synchronized (this) {
+                // Only keep the result if no write touched this user while we were reading
+                boolean current = cacheable && users.get(userId) == rollup && rollup.version == version;
+                for (String date : missing) {
+                    DayRollup day = loaded.computeIfAbsent(date, d -> new DayRollup());
+                    if (current) {
+                        rollup.days.put(date, day);
+                    }
+                    found.put(date, day.snapshot(date));
+                }
+            }
+        }
+
+        List<DayTotals> result = new ArrayList<>(dates.size());
+        for (String date : dates) {
+            result.add(found.get(date));
+        }
+        return result;
+    }
+
+    private Map<String, DayRollup> load(Long userId, String startDate, String endDate) {
+        List<TimeRecord> records = timeRecordRepository.findByUserIdAndDateRange(userId, LocalDate.parse(startDate), LocalDate.parse(endDate));
+        Map<String, DayRollup> days = new HashMap<>();
+        for (TimeRecord record : records) {
+            days.computeIfAbsent(record.getRecordDate(), d -> new DayRollup())
+                    .add(record.getTaskId(), record.getDuration(), Boolean.TRUE.equals(record.getCounted()));
+        }
+        log.debug("Loaded rollups for user {} from {} to {} ({} records)", userId, startDate, endDate, records.size());
+        return days;
+    }
+
+    @EventListener
+    public void onRecordSaved(TimeRecordSavedEvent event) {
+        TimeRecord record = event.record();
+        Long userId = record.getUserId();
+        boolean counted = Boolean.TRUE.equals(record.getCounted());
+
+        synchronized (this) {
+            UserRollup rollup = users.computeIfAbsent(userId, id -> new UserRollup(maxDaysPerUser));
+            rollup.pendingWrites++;
+            rollup.version++;
+        }
+        TransactionCallbacks.onCompletion(committed -> {
+            synchronized (this) {
+                UserRollup rollup = users.get(userId);
+                if (rollup == null) return;
+                rollup.pendingWrites--;
+                rollup.version++;
+                if (committed) {
+                    DayRollup day = rollup.days.get(record.getRecordDate());
+                    if (day != null) {
+                        day.add(record.getTaskId(), record.getDuration(), counted);
+                    }
+                }
+            }
+        });
+    }
+
+    @EventListener
+    public void onRecordsInvalidated(TimeRecordsInvalidatedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> evictUser(event.userId()));
+    }
+
+    public synchronized void evictUser(Long userId) {
+        UserRollup rollup = users.get(userId);
+        if (rollup != null) {
+            rollup.days.clear();
+            rollup.version++;
+        }
+    }
+
+    private static class UserRollup {
+        private final LinkedHashMap<String, DayRollup> days;
+        private long version;
+        private int pendingWrites;
+
+        UserRollup(int maxDays) {
+            this.days = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DayRollup> eldest) {
+                    return size() > maxDays;
+                }
+            };
+        }
+    }
+
+    private static class DayRollup {
+        private final Map<Long, Long> durationByTask = new HashMap<>();
+        private long countedDuration;
+
+        void add(Long taskId, Long duration, boolean counted) {
+            long value = duration == null ? 0L : duration;
+            durationByTask.merge(taskId, value, Long::sum);
+            if (counted) {
+                countedDuration += value;
+            }
+        }
+
+        DayTotals snapshot(String date) {
+            return new DayTotals(date, Map.copyOf(durationByTask), countedDuration);
+        }
+    }
+}
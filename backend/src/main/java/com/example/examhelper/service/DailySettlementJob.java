@@ -0,0 +1,162 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.model.TimeRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Settles every running task at the end of a logical day. Users are read in id-ordered pages
+// and each page is settled in its own transaction: a conditional JDBC batch clears the
+// users' current task, and records are batch-inserted only for the users actually cleared.
+//
+// A user that is cleared always has its record in the same commit, so a run interrupted
+// mid-way can simply be run again with the same cutoff; on startup any users left over
+// from a missed cutoff are settled that way.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DailySettlementJob {
+
+    // Shared by the 4 AM run and the startup catch-up, so nodes never settle concurrently
+    static final String LOCK_NAME = "settleDailyTasks";
+    static final Duration LOCK_AT_MOST = Duration.ofHours(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DailyLeaderboard dailyLeaderboard;
+    private final SwitchWriteBehind switchWriteBehind;
+    private final TaskMetrics taskMetrics;
+    private final ClusterJobLock clusterJobLock;
+    private final TimeRecordFactory timeRecordFactory;
+
+    @Value("${app.settlement.chunk-size:500}")
+    private int chunkSize;
+
+    private record ActiveUser(long id, long taskId, long startTime) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeIfInterrupted() {
+        long cutoff = LogicalDay.startOf(System.currentTimeMillis());
+        clusterJobLock.runExclusively(LOCK_NAME, LOCK_AT_MOST, Duration.ZERO, () -> {
+            Integer pending = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM users WHERE current_task_id IS NOT NULL AND current_task_start_time < ?",
+                    Integer.class, cutoff);
+            if (pending != null && pending > 0) {
+                log.warn("Found {} users not settled at the last 4 AM cutoff, settling now", pending);
+                run(cutoff);
+            }
+        });
+    }
+
+    // Settles every task started before the cutoff, ending it at the cutoff
+    public void run(long cutoff) {
+        // A switch logged but not yet written would land on top of the states settled here
+        switchWriteBehind.pause();
+        try {
+            settle(cutoff);
+        } finally {
+            switchWriteBehind.resume();
+        }
+    }
+
+    private void settle(long cutoff) {
+        long started = System.nanoTime();
+        long lastId = 0;
+        int scanned = 0;
+        int settled = 0;
+
+        while (true) {
+            List<ActiveUser> page = jdbcTemplate.query(
+                    "SELECT id, current_task_id, current_task_start_time FROM users " +
+                    "WHERE current_task_id IS NOT NULL AND current_task_start_time < ? AND id > ? " +
+                    "ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new ActiveUser(rs.getLong(1), rs.getLong(2), rs.getLong(3)),
+                    cutoff, lastId, chunkSize);
+            if (page.isEmpty()) break;
+
+            Integer count = transactionTemplate.execute(status -> settleChunk(page, cutoff));
+            scanned += page.size();
+            settled += count == null ? 0 : count;
+            lastId = page.get(page.size() - 1).id();
+        }
+
+        taskMetrics.settled(settled);
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        log.info("Settlement up to {}: {} users scanned, {} records written in {} ms ({} rows/s)",
+                cutoff, scanned, settled, elapsedMs, settled * 1000L / elapsedMs);
+
+        dailyLeaderboard.freeze(LogicalDay.dateOf(cutoff).minusDays(1).format(LogicalDay.DATE_FORMATTER));
+    }
+
+    private int settleChunk(List<ActiveUser> page, long cutoff) {
+        // Users that switched since the page was read no longer match and are left alone
+        int[] cleared = jdbcTemplate.batchUpdate(
+                "UPDATE users SET current_task_id = NULL, current_task_start_time = NULL " +
+                "WHERE id = ? AND current_task_id = ? AND current_task_start_time = ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ActiveUser user = page.get(i);
+                        ps.setLong(1, user.id());
+                        ps.setLong(2, user.taskId());
+                        ps.setLong(3, user.startTime());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return page.size();
+                    }
+                });
+
+        LocalDateTime now = LocalDateTime.now();
+        List<TimeRecord> records = new ArrayList<>();
+        for (int i = 0; i < page.size(); i++) {
+            if (cleared[i] == 0) continue;
+            ActiveUser user = page.get(i);
+            TimeRecord record = timeRecordFactory.create(user.id(), user.taskId(), user.startTime(), cutoff, now);
+            records.add(record);
+        }
+
+        if (records.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO time_records (user_id, task_id, start_time, end_time, duration, record_date, record_day, counted, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                records, records.size(), (ps, record) -> {
+                    ps.setLong(1, record.getUserId());
+                    ps.setLong(2, record.getTaskId());
+                    ps.setLong(3, record.getStartTime());
+                    ps.setLong(4, record.getEndTime());
+                    ps.setLong(5, record.getDuration());
+                    ps.setString(6, record.getRecordDate());
+                    ps.setDate(7, Date.valueOf(record.getRecordDay()));
+                    ps.setBoolean(8, record.getCounted());
+                    ps.setTimestamp(9, Timestamp.valueOf(record.getCreatedAt()));
+                });
+
+        for (TimeRecord record : records) {
+            eventPublisher.publishEvent(new TimeRecordSavedEvent(record));
+            eventPublisher.publishEvent(new UserStateChangedEvent(record.getUserId(), null, null, record.getEndTime()));
+        }
+        return records.size();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.examhelper.service;
+
+import java.util.Arrays;
+
+// Open-addressing map from (userId, epoch day) to summed durations and a record count, on
+// primitive arrays so aggregating millions of records allocates nothing per record. The pair
+// is packed into one long: the user id above DAY_BITS, the epoch day below. Not thread-safe;
+// each fork-join task fills its own map and results are merged on join.
+final class DayTotalsMap {
+
+    static final int DAY_BITS = 22; // epoch days up to the year 13000
+    private static final long DAY_MASK = (1L << DAY_BITS) - 1;
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private long[] counted;
+    private long[] total;
+    private int[] records;
+    private int size;
+
+    DayTotalsMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    static long key(long userId, long epochDay) {
+        if (userId < 0 || epochDay < 0 || epochDay > DAY_MASK) {
+            throw new IllegalArgumentException("user " + userId + ", day " + epochDay + " out of range");
+        }
+        return userId << DAY_BITS | epochDay;
+    }
+
+    static long userId(long key) {
+        return key >>> DAY_BITS;
+    }
+
+    static long epochDay(long key) {
+        return key & DAY_MASK;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(long key, long duration, boolean isCounted) {
+        add(key, isCounted ? duration : 0L, duration, 1);
+    }
+
+    private void add(long key, long countedDuration, long totalDuration, int recordCount) {
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                grow();
+                slot = slot(key);
+            }
+        }
+        counted[slot] += countedDuration;
+        total[slot] += totalDuration;
+        records[slot] += recordCount;
+    }
+
+    // Adds every entry of the other map to this one
+    void merge(DayTotalsMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counted[i], other.total[i], other.records[i]);
+            }
+        }
+    }
+
+    interface EntryConsumer {
+        void accept(long key, long countedDuration, long totalDuration, int recordCount);
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], counted[i], total[i], records[i]);
+            }
+        }
+    }
+
+    // In key order, i.e. by user and then day: the primary key order of user_day_totals,
+    // so inserts append to the index instead of splitting pages all over it
+    void forEachSorted(EntryConsumer consumer) {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                sorted[n++] = key;
+            }
+        }
+        Arrays.sort(sorted);
+        for (long key : sorted) {
+            int slot = slot(key);
+            consumer.accept(key, counted[slot], total[slot], records[slot]);
+        }
+    }
+
+    // Linear probing; the multiplier spreads keys of neighbouring days of one user
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 33) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counted = new long[capacity];
+        total = new long[capacity];
+        records = new int[capacity];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounted = counted;
+        long[] oldTotal = total;
+        int[] oldRecords = records;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counted[slot] = oldCounted[i];
+                total[slot] = oldTotal[i];
+                records[slot] = oldRecords[i];
+            }
+        }
+    }
+}
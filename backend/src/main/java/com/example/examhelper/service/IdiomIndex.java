@@ -0,0 +1,313 @@
+package com.example.examhelper.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+// In-process search index over chinese_dictionary.word, replacing LIKE '%kw%' scans. Each
+// character and character bigram of a word maps to the sorted positions of the words that
+// contain it. A substring query takes the candidates of its rarest bigram and verifies
+// them; keywords made only of ASCII letters are matched against the words' pinyin initials.
+//
+// Positions follow id order, so results come out sorted by id and pages can be cut by id.
+// The index is built at startup from (id, word) only and refreshed on a schedule: new and
+// updated rows are fetched and merged, and the table is only read again in full when rows
+// have been deleted. When the IdiomSnapshot on disk matches the table, startup reads the
+// words from it instead of the table; the refresh keeps the snapshot current.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class IdiomIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdiomSnapshot snapshot;
+
+    private volatile Data data = Data.build(0, new long[0], new String[0], Signature.EMPTY);
+
+    // count, max(id) and max(updated_at) of the table when the index was built
+    private record Signature(long count, long maxId, Timestamp maxUpdatedAt) {
+        static final Signature EMPTY = new Signature(0, 0, new Timestamp(0));
+
+        String stamp() {
+            return Long.toHexString(count) + "-" + Long.toHexString(maxId) + "-" + Long.toHexString(maxUpdatedAt.getTime());
+        }
+    }
+
+    private record Row(long id, String word) {
+    }
+
+    // Ids of the matching words in ascending order
+    public record Match(long[] ids) {
+        public int total() {
+            return ids.length;
+        }
+    }
+
+    // One immutable version of the index
+    public static final class Data {
+        private final long version;
+        private final long[] ids;
+        private final String[] words;
+        private final Signature signature;
+        // Posting lists in one array: the positions for keys[k] are postings[starts[k]..starts[k+1])
+        private final int[] keys;
+        private final int[] starts;
+        private final int[] postings;
+        // Positions sorted by initials, for prefix lookups
+        private final String[] initials;
+        private final int[] byInitials;
+
+        private Data(long version, long[] ids, String[] words, Signature signature,
+                     int[] keys, int[] starts, int[] postings, String[] initials, int[] byInitials) {
+            this.version = version;
+            this.ids = ids;
+            this.words = words;
+            this.signature = signature;
+            this.keys = keys;
+            this.starts = starts;
+            this.postings = postings;
+            this.initials = initials;
+            this.byInitials = byInitials;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        // All ids in ascending order; callers must not modify the array
+        public long[] ids() {
+            return ids;
+        }
+
+        // Identifies the table contents the index was built from; unlike version it is the
+        // same after a restart and on every instance, so it can go into ETags
+        public String stamp() {
+            return signature.stamp();
+        }
+
+        static Data build(long version, long[] ids, String[] words, Signature signature) {
+            // (key, position) pairs packed into longs and sorted: key in the high half
+            long[] pairs = new long[Arrays.stream(words).mapToInt(w -> 2 * w.length()).sum()];
+            int n = 0;
+            String[] initials = new String[words.length];
+            for (int pos = 0; pos < words.length; pos++) {
+                String word = words[pos];
+                for (int i = 0; i < word.length(); i++) {
+                    pairs[n++] = pack(word.charAt(i), pos);
+                    if (i + 1 < word.length()) {
+                        pairs[n++] = pack(bigram(word.charAt(i), word.charAt(i + 1)), pos);
+                    }
+                }
+                initials[pos] = PinyinInitials.of(word);
+            }
+            Arrays.sort(pairs, 0, n);
+
+            int[] keys = new int[n];
+            int[] starts = new int[n + 1];
+            int[] postings = new int[n];
+            int keyCount = 0;
+            int postingCount = 0;
+            long previous = Long.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (pairs[i] == previous) continue; // same key twice in one word
+                previous = pairs[i];
+                int key = (int) (pairs[i] >> 32);
+                if (keyCount == 0 || keys[keyCount - 1] != key) {
+                    keys[keyCount] = key;
+                    starts[keyCount++] = postingCount;
+                }
+                postings[postingCount++] = (int) pairs[i];
+            }
+            starts[keyCount] = postingCount;
+
+            int[] byInitials = sortedBy(initials);
+            return new Data(version, ids, words, signature, Arrays.copyOf(keys, keyCount),
+                    Arrays.copyOf(starts, keyCount + 1), Arrays.copyOf(postings, postingCount), initials, byInitials);
+        }
+
+        private static long pack(int key, int position) {
+            return ((long) key << 32) | position;
+        }
+
+        // Never collides with a single character, whose key is below 0x10000
+        private static int bigram(char first, char second) {
+            return (first << 16) | second;
+        }
+
+        private static int[] sortedBy(String[] initials) {
+            Integer[] order = new Integer[initials.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing((Integer i) -> initials[i]).thenComparing(i -> i));
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        private int[] postingsOf(int key) {
+            int k = Arrays.binarySearch(keys, key);
+            return k < 0 ? new int[0] : Arrays.copyOfRange(postings, starts[k], starts[k + 1]);
+        }
+
+        private int postingCount(int key) {
+            int k = Arrays.binarySearch(keys, key);
+            return k < 0 ? 0 : starts[k + 1] - starts[k];
+        }
+
+        Match search(String keyword) {
+            if (PinyinInitials.isQuery(keyword)) {
+                return new Match(toIds(byInitialsPrefix(keyword.toLowerCase())));
+            }
+            if (keyword.length() == 1) {
+                return new Match(toIds(postingsOf(keyword.charAt(0))));
+            }
+
+            // Candidates come from the rarest bigram of the keyword
+            int rarest = bigram(keyword.charAt(0), keyword.charAt(1));
+            for (int i = 1; i + 1 < keyword.length(); i++) {
+                int key = bigram(keyword.charAt(i), keyword.charAt(i + 1));
+                if (postingCount(key) < postingCount(rarest)) {
+                    rarest = key;
+                }
+            }
+            int[] candidates = postingsOf(rarest);
+            int[] matches = new int[candidates.length];
+            int count = 0;
+            for (int pos : candidates) {
+                if (keyword.length() == 2 || words[pos].contains(keyword)) {
+                    matches[count++] = pos;
+                }
+            }
+            return new Match(toIds(Arrays.copyOf(matches, count)));
+        }
+
+        private int[] byInitialsPrefix(String prefix) {
+            int from = lowerBound(prefix);
+            int to = from;
+            while (to < byInitials.length && initials[byInitials[to]].startsWith(prefix)) {
+                to++;
+            }
+            int[] positions = Arrays.copyOfRange(byInitials, from, to);
+            Arrays.sort(positions);
+            return positions;
+        }
+
+        private int lowerBound(String prefix) {
+            int low = 0;
+            int high = byInitials.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (initials[byInitials[mid]].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private long[] toIds(int[] positions) {
+            long[] result = new long[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                result[i] = ids[positions[i]];
+            }
+            return result;
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        long started = System.currentTimeMillis();
+        Signature signature = signature();
+        IdiomSnapshot.View view = snapshot.view(signature.stamp());
+        long[] ids;
+        String[] words;
+        if (view != null) {
+            ids = new long[view.size()];
+            words = new String[view.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = view.idAt(i);
+                words[i] = view.wordAt(i);
+            }
+        } else {
+            List<Row> rows = jdbcTemplate.query("SELECT id, word FROM chinese_dictionary ORDER BY id",
+                    (rs, rowNum) -> new Row(rs.getLong(1), rs.getString(2)));
+            ids = new long[rows.size()];
+            words = new String[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                ids[i] = rows.get(i).id();
+                words[i] = rows.get(i).word() == null ? "" : rows.get(i).word();
+            }
+        }
+        data = Data.build(data.version() + 1, ids, words, signature);
+        log.info("Idiom index built with {} words from the {} in {} ms", ids.length,
+                view != null ? "snapshot" : "database", System.currentTimeMillis() - started);
+    }
+
+    @Scheduled(fixedDelayString = "${app.idiom-index.refresh-interval:PT1M}")
+    public void refresh() {
+        Data current = data;
+        Signature signature = signature();
+        if (signature.equals(current.signature)) {
+            snapshot.dump(signature.stamp());
+            return;
+        }
+
+        List<Row> changed = jdbcTemplate.query(
+                "SELECT id, word FROM chinese_dictionary WHERE id > ? OR updated_at > ? ORDER BY id",
+                (rs, rowNum) -> new Row(rs.getLong(1), rs.getString(2)),
+                current.signature.maxId(), current.signature.maxUpdatedAt());
+        List<Row> added = changed.stream().filter(row -> row.id() > current.signature.maxId()).toList();
+        if (current.size() + added.size() != signature.count()) {
+            // Rows were deleted (or the table replaced); positions cannot be patched
+            load();
+            snapshot.dump(data.stamp());
+            return;
+        }
+
+        long[] ids = Arrays.copyOf(current.ids, current.size() + added.size());
+        String[] words = Arrays.copyOf(current.words, ids.length);
+        for (Row row : changed) {
+            int pos = Arrays.binarySearch(current.ids, row.id());
+            if (pos >= 0) {
+                words[pos] = row.word() == null ? "" : row.word();
+            }
+        }
+        for (int i = 0; i < added.size(); i++) {
+            ids[current.size() + i] = added.get(i).id();
+            words[current.size() + i] = added.get(i).word() == null ? "" : added.get(i).word();
+        }
+        data = Data.build(current.version() + 1, ids, words, signature);
+        log.info("Idiom index refreshed: {} added, {} updated", added.size(), changed.size() - added.size());
+        snapshot.dump(signature.stamp());
+    }
+
+    private Signature signature() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), COALESCE(MAX(id), 0), MAX(updated_at) FROM chinese_dictionary",
+                (rs, rowNum) -> {
+                    Timestamp maxUpdatedAt = rs.getTimestamp(3);
+                    return new Signature(rs.getLong(1), rs.getLong(2),
+                            maxUpdatedAt == null ? Signature.EMPTY.maxUpdatedAt() : maxUpdatedAt);
+                });
+    }
+
+    public Data current() {
+        return data;
+    }
+
+    public Match search(String keyword) {
+        return data.search(keyword);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.dto.IdiomPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Bounded LRU cache of browse pages. Keys carry the index version, so a refresh of the
+// dictionary makes every older page unreachable without an explicit flush; the stale
+// entries simply age out.
+@Component
+public class IdiomPageCache {
+
+    @Value("${app.idiom-page-cache.max-size:256}")
+    private int maxSize;
+
+    private record Key(long version, long cursor, int size) {
+    }
+
+    // Guarded by this
+    private final LinkedHashMap<Key, IdiomPage> pages = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, IdiomPage> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    // Loads outside the lock; two concurrent misses for one page both read it, which is harmless
+    public IdiomPage get(long version, long cursor, int size, Supplier<IdiomPage> loader) {
+        Key key = new Key(version, cursor, size);
+        synchronized (this) {
+            IdiomPage page = pages.get(key);
+            if (page != null) return page;
+        }
+        IdiomPage page = loader.get();
+        synchronized (this) {
+            pages.put(key, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.examhelper.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Random idioms without ORDER BY RAND(): k distinct ids are drawn from the id array kept by
+// IdiomIndex with Floyd's algorithm, in O(k) time and memory whatever the dictionary size,
+// and the caller reads just those rows by primary key.
+//
+// The daily set is the same for everyone during a logical day: it is drawn with the date
+// as seed, computed once per day (at the 4 AM rollover or on first use) and cached.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IdiomSampler {
+
+    private final IdiomIndex idiomIndex;
+
+    @Value("${app.idiom-sampler.daily-size:10}")
+    private int dailySize;
+
+    private record DailySet(String date, long version, long[] ids) {
+    }
+
+    private volatile DailySet dailySet;
+
+    public long[] sample(int k) {
+        return sample(idiomIndex.current().ids(), k, ThreadLocalRandom.current());
+    }
+
+    // First limit ids of today's set
+    public long[] daily(int limit) {
+        long[] ids = currentDailySet().ids();
+        long[] result = new long[Math.min(Math.max(limit, 0), ids.length)];
+        System.arraycopy(ids, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void precomputeDailySet() {
+        DailySet set = currentDailySet();
+        log.info("Daily idiom set for {}: {} idioms", set.date(), set.ids().length);
+    }
+
+    private DailySet currentDailySet() {
+        String date = LogicalDay.of(System.currentTimeMillis());
+        IdiomIndex.Data data = idiomIndex.current();
+        DailySet set = dailySet;
+        // Recomputed when the day or the dictionary changes; the seed keeps it stable otherwise
+        if (set == null || !set.date().equals(date) || set.version() != data.version()) {
+            set = new DailySet(date, data.version(), sample(data.ids(), dailySize, new Random(date.hashCode())));
+            dailySet = set;
+        }
+        return set;
+    }
+
+    // Floyd's algorithm picks a uniformly random k-subset of positions; a Fisher-Yates pass
+    // then puts it in random order as well
+    static long[] sample(long[] ids, int k, Random random) {
+        int n = ids.length;
+        k = Math.min(Math.max(k, 0), n);
+        Set<Integer> chosen = new HashSet<>(k * 2);
+        int[] positions = new int[k];
+        int count = 0;
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            // j itself cannot have been picked yet, as earlier rounds only pick below j
+            int pick = chosen.add(t) ? t : j;
+            chosen.add(pick);
+            positions[count++] = pick;
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int swap = random.nextInt(i + 1);
+            int tmp = positions[i];
+            positions[i] = positions[swap];
+            positions[swap] = tmp;
+        }
+
+        long[] result = new long[k];
+        for (int i = 0; i < k; i++) {
+            result[i] = ids[positions[i]];
+        }
+        return result;
+    }
+}
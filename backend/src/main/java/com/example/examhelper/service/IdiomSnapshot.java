@@ -0,0 +1,295 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.model.ChineseDictionary;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary snapshot of chinese_dictionary in one memory-mapped file, so the dictionary is
+// served without JPA and without holding its TEXT columns on the heap. Layout:
+//
+//   header   magic, format, stamp (length-prefixed UTF-8), row count, string bytes
+//   rows     per word, in id order: id, six string offsets (-1 for null), created_at,
+//            updated_at (Long.MIN_VALUE for null), ROW_BYTES each
+//   strings  each distinct string once, as a length-prefixed UTF-8 run
+//
+// The stamp is the IdiomIndex stamp of the table the snapshot was dumped from; callers only
+// use a snapshot whose stamp matches the current one and read from MySQL otherwise.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class IdiomSnapshot {
+
+    private static final int MAGIC = 0x49445331; // "IDS1"
+    private static final int FORMAT = 1;
+    private static final int STRING_FIELDS = 6;
+    private static final int ROW_BYTES = 8 + 4 * STRING_FIELDS + 8 + 8;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.idiom-snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.idiom-snapshot.path:data/idioms.snapshot}")
+    private String path;
+
+    private volatile View view;
+
+    // One mapped snapshot; reads use absolute positions only, so it is safe to share
+    public static final class View {
+        private final String stamp;
+        private final ByteBuffer buffer;
+        private final int rowCount;
+        private final int rowsStart;
+        private final int stringsStart;
+
+        private View(ByteBuffer buffer) {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+                throw new IllegalStateException("Not an idiom snapshot");
+            }
+            int stampLength = buffer.getInt(8);
+            this.stamp = decode(buffer, 12, stampLength);
+            int position = 12 + stampLength;
+            this.rowCount = buffer.getInt(position);
+            int stringBytes = buffer.getInt(position + 4);
+            this.buffer = buffer;
+            this.rowsStart = position + 8;
+            this.stringsStart = rowsStart + rowCount * ROW_BYTES;
+            if (stringsStart + stringBytes != buffer.capacity()) {
+                throw new IllegalStateException("Truncated idiom snapshot");
+            }
+        }
+
+        public String stamp() {
+            return stamp;
+        }
+
+        public int size() {
+            return rowCount;
+        }
+
+        public long idAt(int row) {
+            return buffer.getLong(rowsStart + row * ROW_BYTES);
+        }
+
+        public String wordAt(int row) {
+            String word = string(rowsStart + row * ROW_BYTES + 8);
+            return word == null ? "" : word;
+        }
+
+        // The word with this id, decoded from the buffer; null when it is not in the snapshot
+        public ChineseDictionary find(long id) {
+            int low = 0;
+            int high = rowCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = idAt(mid);
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return decodeRow(mid);
+                }
+            }
+            return null;
+        }
+
+        private ChineseDictionary decodeRow(int row) {
+            int at = rowsStart + row * ROW_BYTES;
+            ChineseDictionary entry = new ChineseDictionary();
+            entry.setId(buffer.getLong(at));
+            entry.setWord(string(at + 8));
+            entry.setPartOfSpeech(string(at + 12));
+            entry.setDefinition(string(at + 16));
+            entry.setExample(string(at + 20));
+            entry.setSynonyms(string(at + 24));
+            entry.setAntonyms(string(at + 28));
+            entry.setCreatedAt(timestamp(buffer.getLong(at + 32)));
+            entry.setUpdatedAt(timestamp(buffer.getLong(at + 40)));
+            return entry;
+        }
+
+        private String string(int fieldAt) {
+            int offset = buffer.getInt(fieldAt);
+            if (offset < 0) return null;
+            int at = stringsStart + offset;
+            return decode(buffer, at + 4, buffer.getInt(at));
+        }
+
+        private static String decode(ByteBuffer buffer, int at, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(at, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static Timestamp timestamp(long millis) {
+            return millis == NULL_TIME ? null : new Timestamp(millis);
+        }
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled || !Files.exists(file())) return;
+        try {
+            view = map(file());
+            log.info("Idiom snapshot mapped: {} words, stamp {}", view.size(), view.stamp());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable idiom snapshot {}: {}", file(), e.toString());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The mapped snapshot if it was dumped from the table state identified by stamp
+    public View view(String stamp) {
+        View current = view;
+        return current != null && current.stamp().equals(stamp) ? current : null;
+    }
+
+    // Reads the table with plain JDBC and replaces the snapshot. The stamp must be taken
+    // before the read: if rows change meanwhile, the next stamp differs and the snapshot is
+    // treated as stale rather than served as current.
+    public synchronized void dump(String stamp) {
+        if (!enabled || view(stamp) != null) return;
+        long started = System.currentTimeMillis();
+        Map<String, Integer> offsets = new HashMap<>();
+        ByteArrayBuilder strings = new ByteArrayBuilder();
+        ByteArrayBuilder rows = new ByteArrayBuilder();
+        int[] rowCount = {0};
+        jdbcTemplate.query("SELECT id, word, part_of_speech, definition, example, synonyms, antonyms, " +
+                "created_at, updated_at FROM chinese_dictionary ORDER BY id", rs -> {
+            rows.writeLong(rs.getLong(1));
+            for (int column = 2; column < 2 + STRING_FIELDS; column++) {
+                rows.writeInt(intern(rs.getString(column), offsets, strings));
+            }
+            rows.writeLong(millis(rs.getTimestamp(8)));
+            rows.writeLong(millis(rs.getTimestamp(9)));
+            rowCount[0]++;
+        });
+
+        Path target = file();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                byte[] stampBytes = stamp.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(stampBytes.length);
+                out.write(stampBytes);
+                out.writeInt(rowCount[0]);
+                out.writeInt(strings.size());
+                rows.writeTo(out);
+                strings.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            view = map(target);
+            log.info("Idiom snapshot written: {} words, {} distinct strings, {} bytes in {} ms",
+                    rowCount[0], offsets.size(), Files.size(target), System.currentTimeMillis() - started);
+        } catch (IOException e) {
+            log.warn("Could not write idiom snapshot {}: {}", target, e.toString());
+        }
+    }
+
+    private Path file() {
+        return Paths.get(path);
+    }
+
+    private static View map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new View(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Offset of the string in the string section, appending it on first use
+    private static int intern(String value, Map<String, Integer> offsets, ByteArrayBuilder strings) {
+        if (value == null) return -1;
+        Integer offset = offsets.get(value);
+        if (offset == null) {
+            offset = strings.size();
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            strings.writeInt(bytes.length);
+            strings.write(bytes);
+            offsets.put(value, offset);
+        }
+        return offset;
+    }
+
+    private static long millis(Timestamp timestamp) {
+        return timestamp == null ? NULL_TIME : timestamp.getTime();
+    }
+
+    // Growable big-endian buffer; ByteArrayOutputStream would copy again on toByteArray
+    private static final class ByteArrayBuilder {
+        private final List<byte[]> chunks = new ArrayList<>();
+        private byte[] chunk = new byte[1 << 16];
+        private int used;
+        private int size;
+
+        void writeInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void write(byte[] bytes) {
+            for (byte b : bytes) {
+                writeByte(b);
+            }
+        }
+
+        private void writeByte(int b) {
+            if (used == chunk.length) {
+                chunks.add(chunk);
+                chunk = new byte[chunk.length];
+                used = 0;
+            }
+            chunk[used++] = (byte) b;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            for (byte[] full : chunks) {
+                out.write(full);
+            }
+            out.write(chunk, 0, used);
+        }
+    }
+}
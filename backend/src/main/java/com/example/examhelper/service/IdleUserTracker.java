@@ -0,0 +1,100 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ids of users without a current task, so mandatory-task enforcement only has to look at
+// the users it may actually change. Loaded at startup, then kept current from committed
+// state changes, both this node's and those replayed from other nodes (ClusterChangeLog).
+// Those can arrive out of order, so the time of each user's last applied change is kept and
+// an older one is ignored. Extra ids are harmless (the enforcement UPDATE is conditional).
+//
+// The rebuild is only a safety net for a change whose event never arrived, such as one a
+// node crashed before logging. It scans the users table, so it runs rarely
+// (app.idle-users.rebuild-interval, hourly by default).
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IdleUserTracker {
+
+    private final UserRepository userRepository;
+
+    private final Set<Long> idleUserIds = ConcurrentHashMap.newKeySet();
+    // Updated together with idleUserIds, per user, inside compute()
+    private final Map<Long, Long> changedAt = new ConcurrentHashMap<>();
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong usersChanged = new AtomicLong();
+
+    @PostConstruct
+    public void load() {
+        idleUserIds.addAll(userRepository.findIdleUserIds());
+        log.info("Idle user tracker loaded with {} users", idleUserIds.size());
+    }
+
+    @Scheduled(fixedDelayString = "${app.idle-users.rebuild-interval:PT1H}",
+            initialDelayString = "${app.idle-users.rebuild-interval:PT1H}")
+    public void rebuild() {
+        int before = idleUserIds.size();
+        idleUserIds.addAll(userRepository.findIdleUserIds());
+        if (idleUserIds.size() > before) {
+            log.info("Idle user rebuild found {} users missed by the change events", idleUserIds.size() - before);
+        }
+    }
+
+    public List<Long> snapshot() {
+        return new ArrayList<>(idleUserIds);
+    }
+
+    public boolean isEmpty() {
+        return idleUserIds.isEmpty();
+    }
+
+    // Records the outcome of one enforcement pass over the given ids
+    public void passCompleted(Collection<Long> userIds, int changed) {
+        passes.incrementAndGet();
+        usersChanged.addAndGet(changed);
+        log.debug("Mandatory task pass: {} idle candidates, {} users changed", userIds.size(), changed);
+    }
+
+    public long getPasses() {
+        return passes.get();
+    }
+
+    public long getUsersChanged() {
+        return usersChanged.get();
+    }
+
+    @EventListener
+    public void onUserStateChanged(UserStateChangedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> {
+            if (!committed) return;
+            changedAt.compute(event.userId(), (userId, current) -> {
+                if (current != null && event.changedAt() != null && event.changedAt() < current) {
+                    return current;
+                }
+                if (event.currentTaskId() == null) {
+                    idleUserIds.add(userId);
+                } else {
+                    idleUserIds.remove(userId);
+                }
+                return event.orderTime();
+            });
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.examhelper.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+// The "4 AM rule": a logical day runs from 04:00 to 04:00 the next morning, so work done
+// after midnight still belongs to the previous day.
+public final class LogicalDay {
+
+    public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    public static final int START_HOUR = 4;
+
+    private LogicalDay() {
+    }
+
+    public static String of(long timestamp) {
+        return dateOf(timestamp).format(DATE_FORMATTER);
+    }
+
+    public static LocalDate dateOf(long timestamp) {
+        ZonedDateTime zdt = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault());
+        if (zdt.getHour() < START_HOUR) {
+            zdt = zdt.minusDays(1);
+        }
+        return zdt.toLocalDate();
+    }
+
+    // Epoch millis at which the logical day containing the timestamp started
+    public static long startOf(long timestamp) {
+        return dateOf(timestamp).atTime(START_HOUR, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.TimeRecordsInvalidatedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.model.TimeRecord;
+import com.example.examhelper.repository.UserDayTotalRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.*;
+
+// Counted duration per user in day, ISO week and month buckets, plus the all-time total, so
+// long-range charts and cumulative totals never re-sum raw rows. A range sum reads the days
+// up to the first Monday, whole weeks, whole months in the middle, and the same again at the
+// far end: a few dozen bucket reads at most, whatever the range.
+//
+// A user's buckets are built on first use from their day totals (the summary generation plus
+// a GROUP BY over the days after it, see UserDayTotalRepository) and then kept current by
+// applying each new record once its transaction commits, like DailyRollupStore.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PeriodRollupStore {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // Longest range the series endpoint accepts: a year of days (leap years included), about
+    // seven years of weeks or thirty of months
+    public static final int MAX_BUCKETS = 366;
+
+    private final UserDayTotalRepository userDayTotalRepository;
+
+    @Value("${app.period-rollup.max-users:2000}")
+    private int maxUsers;
+
+    public enum Granularity {
+        DAY, WEEK, MONTH
+    }
+
+    // label is yyyy-MM-dd, YYYY-Www (ISO week) or yyyy-MM
+    public record Bucket(String label, long duration) {
+    }
+
+    // Guarded by this
+    private final LinkedHashMap<Long, UserPeriods> users = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserPeriods> eldest) {
+            return size() > maxUsers;
+        }
+    };
+    // Users with a write in flight, and a per-user write counter, so a load that raced with
+    // a write is not cached
+    private final Map<Long, Integer> pendingWrites = new HashMap<>();
+    private final Map<Long, Long> versions = new HashMap<>();
+
+    // Number of buckets series() returns for the range; 0 when from is after to
+    public static long bucketCount(Granularity granularity, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return 0;
+        return switch (granularity) {
+            case DAY -> ChronoUnit.DAYS.between(from, to) + 1;
+            case WEEK -> ChronoUnit.WEEKS.between(from.with(DayOfWeek.MONDAY), to.with(DayOfWeek.MONDAY)) + 1;
+            case MONTH -> ChronoUnit.MONTHS.between(YearMonth.from(from), YearMonth.from(to)) + 1;
+        };
+    }
+
+    // One bucket per period overlapping [from, to]; edge buckets only cover the part inside.
+    // Callers bound the range (see bucketCount).
+    public List<Bucket> series(Long userId, Granularity granularity, LocalDate from, LocalDate to) {
+        UserPeriods periods = periods(userId);
+        List<Bucket> buckets = new ArrayList<>();
+        synchronized (periods) {
+            LocalDate start = from;
+            while (!start.isAfter(to)) {
+                LocalDate end = switch (granularity) {
+                    case DAY -> start;
+                    case WEEK -> start.with(DayOfWeek.SUNDAY);
+                    case MONTH -> YearMonth.from(start).atEndOfMonth();
+                };
+                if (end.isAfter(to)) {
+                    end = to;
+                }
+                buckets.add(new Bucket(label(granularity, start), periods.sum(start, end)));
+                start = end.plusDays(1);
+            }
+        }
+        return buckets;
+    }
+
+    public long total(Long userId, LocalDate from, LocalDate to) {
+        UserPeriods periods = periods(userId);
+        synchronized (periods) {
+            return periods.sum(from, to);
+        }
+    }
+
+    public long total(Long userId) {
+        UserPeriods periods = periods(userId);
+        synchronized (periods) {
+            return periods.total;
+        }
+    }
+
+    private static String label(Granularity granularity, LocalDate start) {
+        return switch (granularity) {
+            case DAY -> start.format(DATE_FORMATTER);
+            case WEEK -> String.format("%d-W%02d", start.get(IsoFields.WEEK_BASED_YEAR), start.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTH -> YearMonth.from(start).toString();
+        };
+    }
+
+    private UserPeriods periods(Long userId) {
+        long version;
+        synchronized (this) {
+            UserPeriods periods = users.get(userId);
+            if (periods != null) return periods;
+            version = versions.getOrDefault(userId, 0L);
+        }
+
+        UserPeriods loaded = new UserPeriods();
+        for (Object[] row : userDayTotalRepository.findCountedDurationsByDay(userId)) {
+            if (row[0] == null || row[1] == null) continue;
+            loaded.add(toLocalDate(row[0]), ((Number) row[1]).longValue());
+        }
+        log.debug("Loaded period rollups for user {} ({} days)", userId, loaded.days.size());
+
+        synchronized (this) {
+            UserPeriods periods = users.get(userId);
+            if (periods != null) return periods;
+            // Only keep the result if no write touched this user while we were reading
+            if (!pendingWrites.containsKey(userId) && versions.getOrDefault(userId, 0L) == version) {
+                users.put(userId, loaded);
+            }
+            return loaded;
+        }
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate();
+        }
+        if (value instanceof LocalDate date) {
+            return date;
+        }
+        return LocalDate.parse(value.toString());
+    }
+
+    @EventListener
+    public void onRecordSaved(TimeRecordSavedEvent event) {
+        TimeRecord record = event.record();
+        Long userId = record.getUserId();
+        boolean counted = Boolean.TRUE.equals(record.getCounted());
+
+        synchronized (this) {
+            pendingWrites.merge(userId, 1, Integer::sum);
+            versions.merge(userId, 1L, Long::sum);
+        }
+        TransactionCallbacks.onCompletion(committed -> {
+            UserPeriods periods;
+            synchronized (this) {
+                pendingWrites.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+                versions.merge(userId, 1L, Long::sum);
+                periods = users.get(userId);
+            }
+            if (committed && counted && periods != null && record.getDuration() != null) {
+                synchronized (periods) {
+                    periods.add(LocalDate.parse(record.getRecordDate(), DATE_FORMATTER), record.getDuration());
+                }
+            }
+        });
+    }
+
+    @EventListener
+    public void onRecordsInvalidated(TimeRecordsInvalidatedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> evictUser(event.userId()));
+    }
+
+    public synchronized void evictUser(Long userId) {
+        users.remove(userId);
+        versions.merge(userId, 1L, Long::sum);
+    }
+
+    // Guarded by itself
+    private static class UserPeriods {
+        private final Map<LocalDate, Long> days = new HashMap<>();
+        private final Map<LocalDate, Long> weeks = new HashMap<>(); // keyed by the Monday
+        private final Map<YearMonth, Long> months = new HashMap<>();
+        private long total;
+
+        void add(LocalDate day, long duration) {
+            days.merge(day, duration, Long::sum);
+            weeks.merge(day.with(DayOfWeek.MONDAY), duration, Long::sum);
+            months.merge(YearMonth.from(day), duration, Long::sum);
+            total += duration;
+        }
+
+        long sum(LocalDate from, LocalDate to) {
+            if (from.isAfter(to)) return 0;
+            YearMonth first = YearMonth.from(from);
+            YearMonth last = YearMonth.from(to);
+            if (first.equals(last)) {
+                return sumWithinMonth(from, to);
+            }
+            long sum = sumWithinMonth(from, first.atEndOfMonth()) + sumWithinMonth(last.atDay(1), to);
+            for (YearMonth month = first.plusMonths(1); month.isBefore(last); month = month.plusMonths(1)) {
+                sum += months.getOrDefault(month, 0L);
+            }
+            return sum;
+        }
+
+        // Days up to the first Monday, whole weeks, then the remaining days
+        private long sumWithinMonth(LocalDate from, LocalDate to) {
+            if (from.getDayOfMonth() == 1 && to.equals(YearMonth.from(to).atEndOfMonth())) {
+                return months.getOrDefault(YearMonth.from(from), 0L);
+            }
+            long sum = 0;
+            LocalDate day = from;
+            while (!day.isAfter(to) && day.getDayOfWeek() != DayOfWeek.MONDAY) {
+                sum += days.getOrDefault(day, 0L);
+                day = day.plusDays(1);
+            }
+            while (!day.plusDays(6).isAfter(to)) {
+                sum += weeks.getOrDefault(day, 0L);
+                day = day.plusWeeks(1);
+            }
+            while (!day.isAfter(to)) {
+                sum += days.getOrDefault(day, 0L);
+                day = day.plusDays(1);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.examhelper.service;
+
+import java.nio.charset.Charset;
+
+// First letters of the pinyin of Chinese characters, without a pinyin dictionary: the
+// 3755 level-1 characters of GB2312 are ordered by pinyin, so the letter follows from the
+// character's GB2312 code. Level-2 (rarer) characters are ordered by radical and map to '?'.
+final class PinyinInitials {
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    // First GB2312 code of each initial; there are no pinyin syllables starting with i, u or v
+    private static final int[] BOUNDARIES = {
+            0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC, 0xC2E8,
+            0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1, 0xD7FA};
+    private static final char[] LETTERS = "abcdefghjklmnopqrstwxyz".toCharArray();
+
+    private PinyinInitials() {
+    }
+
+    // Initials of every letter or character in the text; punctuation and spaces are skipped
+    static String of(String text) {
+        StringBuilder initials = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (Character.isLetterOrDigit(c)) {
+                    initials.append(Character.toLowerCase(c));
+                }
+            } else if (Character.isIdeographic(c)) {
+                initials.append(of(c));
+            }
+        }
+        return initials.toString();
+    }
+
+    static char of(char c) {
+        byte[] bytes = String.valueOf(c).getBytes(GBK);
+        if (bytes.length != 2) return '?';
+        int code = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        if (code < BOUNDARIES[0] || code >= BOUNDARIES[BOUNDARIES.length - 1]) return '?';
+        for (int i = LETTERS.length - 1; i >= 0; i--) {
+            if (code >= BOUNDARIES[i]) {
+                return LETTERS[i];
+            }
+        }
+        return '?';
+    }
+
+    static boolean isQuery(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (c >= 0x80 || !Character.isLetter(c)) return false;
+        }
+        return !keyword.isEmpty();
+    }
+}
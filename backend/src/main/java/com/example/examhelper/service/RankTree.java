@@ -0,0 +1,114 @@
+package com.example.examhelper.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Order-statistic treap over (total desc, userId asc). Insert, remove and rank lookups are
+// O(log n) expected. Not thread-safe; callers synchronize.
+final class RankTree {
+
+    private static final class Node {
+        final long total;
+        final long userId;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(long total, long userId) {
+            this.total = total;
+            this.userId = userId;
+        }
+    }
+
+    private Node root;
+
+    int size() {
+        return size(root);
+    }
+
+    void insert(long userId, long total) {
+        Node[] parts = split(root, total, userId, false);
+        root = merge(merge(parts[0], new Node(total, userId)), parts[1]);
+    }
+
+    void remove(long userId, long total) {
+        Node[] parts = split(root, total, userId, false);
+        Node[] rest = split(parts[1], total, userId, true);
+        root = merge(parts[0], rest[1]);
+    }
+
+    // Number of entries ranked ahead of (total, userId). Pass Long.MIN_VALUE as userId to
+    // count only strictly larger totals.
+    int countAhead(long userId, long total) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (compare(node.total, node.userId, total, userId) < 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    List<Long> first(int n) {
+        List<Long> result = new ArrayList<>(n);
+        collect(root, n, result);
+        return result;
+    }
+
+    private void collect(Node node, int n, List<Long> result) {
+        if (node == null || result.size() >= n) return;
+        collect(node.left, n, result);
+        if (result.size() < n) {
+            result.add(node.userId);
+            collect(node.right, n, result);
+        }
+    }
+
+    private static int compare(long total1, long userId1, long total2, long userId2) {
+        int byTotal = Long.compare(total2, total1);
+        return byTotal != 0 ? byTotal : Long.compare(userId1, userId2);
+    }
+
+    // Splits into (keys before the given key, the rest); with inclusive the key itself goes left
+    private static Node[] split(Node node, long total, long userId, boolean inclusive) {
+        if (node == null) return new Node[]{null, null};
+        int cmp = compare(node.total, node.userId, total, userId);
+        if (cmp < 0 || (inclusive && cmp == 0)) {
+            Node[] parts = split(node.right, total, userId, inclusive);
+            node.right = parts[0];
+            update(node);
+            return new Node[]{node, parts[1]};
+        }
+        Node[] parts = split(node.left, total, userId, inclusive);
+        node.left = parts[1];
+        update(node);
+        return new Node[]{parts[0], node};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
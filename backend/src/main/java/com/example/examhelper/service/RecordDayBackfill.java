@@ -0,0 +1,46 @@
+package com.example.examhelper.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Fills time_records.record_day for rows written before the typed column existed. Every
+// query reads record_day, so this runs during startup, after the schema update and before
+// the web server accepts requests. Rows are converted in id ranges, one statement each, so
+// no long transaction or lock is held; once every row has a value this is a single query.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class RecordDayBackfill {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.backfill.chunk-size:10000}")
+    private int chunkSize;
+
+    @PostConstruct
+    public void run() {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM time_records WHERE record_day IS NULL AND record_date IS NOT NULL");
+        if (bounds.get("min_id") == null) return;
+
+        long minId = ((Number) bounds.get("min_id")).longValue();
+        long maxId = ((Number) bounds.get("max_id")).longValue();
+        long started = System.currentTimeMillis();
+        long updated = 0;
+        for (long from = minId; from <= maxId; from += chunkSize) {
+            updated += jdbcTemplate.update(
+                    "UPDATE time_records SET record_day = CAST(record_date AS DATE) " +
+                    "WHERE record_day IS NULL AND record_date IS NOT NULL AND id BETWEEN ? AND ?",
+                    from, from + chunkSize - 1);
+        }
+        log.info("Backfilled record_day for {} time records in {} ms", updated, System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.model.StreamTicket;
+import com.example.examhelper.repository.StreamTicketRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.UUID;
+
+// Issues and redeems the single-use tickets of the status stream (see StreamTicket)
+@Service
+@RequiredArgsConstructor
+public class StreamTicketService {
+
+    private final StreamTicketRepository streamTicketRepository;
+
+    @Value("${app.status-stream.ticket-ttl:PT30S}")
+    private Duration ticketTtl;
+
+    public String issue(Long userId) {
+        String ticket = UUID.randomUUID().toString();
+        streamTicketRepository.save(new StreamTicket(ticket, userId, System.currentTimeMillis() + ticketTtl.toMillis()));
+        return ticket;
+    }
+
+    // The ticket's user, or null when it is unknown, expired or already spent
+    @Transactional
+    public Long redeem(String ticket) {
+        StreamTicket found = streamTicketRepository.findById(ticket).orElse(null);
+        if (found == null || streamTicketRepository.redeem(ticket, System.currentTimeMillis()) == 0) {
+            return null;
+        }
+        return found.getUserId();
+    }
+
+    @Scheduled(cron = "0 */10 * * * ?")
+    @Transactional
+    public void purgeExpired() {
+        streamTicketRepository.deleteExpired(System.currentTimeMillis());
+    }
+}
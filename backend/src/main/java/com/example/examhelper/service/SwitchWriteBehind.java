@@ -0,0 +1,608 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.model.TimeRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Optional write-behind path for task switches (app.write-behind.enabled). A switch is
+// appended to a local log and kept in a map of pending user states, and the request returns
+// without writing to MySQL. A background flusher writes the resulting time records and user
+// states in JDBC batches, at most max-delay later while the DB is reachable.
+//
+// Each flush commits its batch together with the sequence number of its last log entry in
+// this node's row of write_behind_checkpoints, so entries past the checkpoint are replayed
+// exactly once on startup after a crash. Every user update is conditional on the state the
+// entry was logged against; an entry whose user changed meanwhile (another node, or a
+// replay of something already written) is dropped with its time record. Code that sets a user's current task directly, or reads a user's
+// records, calls flush() / flushUser() first so it never overwrites or misses a switch.
+// The settlement job pauses the log instead: switches then take the direct path until it
+// resumes, so nothing logged can land on top of the states it settles.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class SwitchWriteBehind {
+
+    private static final String SEGMENT_PREFIX = "switches-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TimeRecordFactory timeRecordFactory;
+    private final ClusterNode clusterNode;
+
+    @Value("${app.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.write-behind.dir:data/write-behind}")
+    private String dir;
+
+    @Value("${app.write-behind.max-delay:500ms}")
+    private Duration maxDelay;
+
+    @Value("${app.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.write-behind.segment-size:8MB}")
+    private DataSize segmentSize;
+
+    @Value("${app.write-behind.fsync:true}")
+    private boolean fsync;
+
+    // One switch: the previous task (if any) ends at time and taskId starts. idempotencyKey
+    // is the client's key, if it sent one.
+    private record Switch(long seq, long userId, Long previousTaskId, Long previousStartTime, long time, Long taskId,
+                          String idempotencyKey) {
+    }
+
+    // A logged switch as seen by the caller; repeated when an earlier request with the same
+    // idempotency key logged it
+    public record Logged(Long taskId, long startTime, boolean repeated) {
+    }
+
+    private record KeyOf(long userId, String idempotencyKey) {
+    }
+
+    private record PendingState(long seq, Long taskId, Long startTime) {
+    }
+
+    private record Segment(Path path, long lastSeq) {
+    }
+
+    // Guarded by lock, a ReentrantLock so file writes do not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Switch> queue = new ArrayDeque<>();
+    private final List<Segment> closedSegments = new ArrayList<>();
+    private long nextSeq;
+    private FileChannel channel;
+    private Path channelPath;
+    private long channelLastSeq;
+
+    // Written under lock, read without locking on the request paths
+    private final Map<Long, PendingState> pendingStates = new ConcurrentHashMap<>();
+    // Keyed switches not yet flushed. An entry leaves only after its switch_requests row is
+    // committed, so a key is always found here or in the DB.
+    private final Map<KeyOf, Switch> pendingKeys = new ConcurrentHashMap<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private TransactionTemplate transactionTemplate;
+    private String checkpointId;
+    private ScheduledExecutorService flusher;
+    private volatile long flushedSwitches;
+    // Written under lock. Every pause starts a new epoch; an append prepared from a DB read in
+    // an earlier epoch may predate what the pause holder wrote and is refused.
+    private volatile boolean paused;
+    private volatile boolean stopped;
+    private volatile long epoch;
+
+    @PostConstruct
+    public void start() throws IOException {
+        // Flushes commit on their own even when called from inside another transaction
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        // Each node has its own log directory and so its own row; a cluster node needs a fixed
+        // app.cluster.node-id for the row to outlive a restart (see ClusterNode)
+        checkpointId = clusterNode.isEnabled() ? clusterNode.id() : "local";
+        Path directory = Paths.get(dir);
+        List<Path> segments = listSegments(directory);
+        if (enabled || !segments.isEmpty()) {
+            Integer rows = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM write_behind_checkpoints WHERE node_id = ?", Integer.class, checkpointId);
+            if (rows == null || rows == 0) {
+                jdbcTemplate.update("INSERT INTO write_behind_checkpoints (node_id, last_seq) VALUES (?, 0)", checkpointId);
+            }
+        }
+        recover(segments);
+        if (!enabled) return;
+
+        Files.createDirectories(directory);
+        openSegment(directory);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, maxDelay.toMillis(), maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Task switch write-behind enabled, log in {}", directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        lock.lock();
+        try {
+            stopped = true;
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushQuietly();
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether switches should go to the log; a caller must still handle append() refusing
+    public boolean isEnabled() {
+        return enabled && !paused && !stopped;
+    }
+
+    // To be read before the DB state that is passed to append()
+    public long epoch() {
+        return epoch;
+    }
+
+    // Logs a switch of the user to taskId at time. The previous task is the pending one if
+    // there is one, otherwise the given state read from the DB in readEpoch. Returns once the
+    // entry is in the log (and on disk, with fsync), or null without logging anything when
+    // the log is paused or stopped or the DB state may be stale; the caller then switches
+    // directly in the DB. A switch already logged with the same idempotency key is returned
+    // as repeated instead of logging another.
+    public Logged append(long userId, Long dbTaskId, Long dbStartTime, Long taskId, long time, long readEpoch,
+                         String idempotencyKey) {
+        boolean full;
+        lock.lock();
+        try {
+            Switch earlier = idempotencyKey == null ? null : pendingKeys.get(new KeyOf(userId, idempotencyKey));
+            if (earlier != null) {
+                return new Logged(earlier.taskId(), earlier.time(), true);
+            }
+            if (!enabled || paused || stopped || readEpoch != epoch) {
+                return null;
+            }
+            full = appendLocked(userId, dbTaskId, dbStartTime, taskId, time, idempotencyKey);
+        } finally {
+            lock.unlock();
+        }
+        if (full) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: write the batch on this thread
+                flushQuietly();
+            }
+        }
+        return new Logged(taskId, time, false);
+    }
+
+    // The switch logged with this idempotency key and not yet written to the DB, or null
+    public Logged loggedSwitch(long userId, String idempotencyKey) {
+        Switch entry = pendingKeys.get(new KeyOf(userId, idempotencyKey));
+        return entry == null ? null : new Logged(entry.taskId(), entry.time(), true);
+    }
+
+    // Writes everything logged so far and holds the log back until resume(); switches made in
+    // the meantime go directly to the DB
+    public void pause() {
+        lock.lock();
+        try {
+            paused = true;
+            epoch++;
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    public void resume() {
+        lock.lock();
+        try {
+            paused = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // True when the queue has reached a full batch
+    private boolean appendLocked(long userId, Long dbTaskId, Long dbStartTime, Long taskId, long time,
+                                 String idempotencyKey) {
+        PendingState pending = pendingStates.get(userId);
+        Long previousTaskId = pending != null ? pending.taskId() : dbTaskId;
+        Long previousStartTime = pending != null ? pending.startTime() : dbStartTime;
+        Switch entry = new Switch(nextSeq, userId, previousTaskId, previousStartTime, time, taskId, idempotencyKey);
+        try {
+            if (channel.size() >= segmentSize.toBytes()) {
+                closedSegments.add(new Segment(channelPath, channelLastSeq));
+                channel.close();
+                openSegment(channelPath.getParent());
+            }
+            ByteBuffer line = ByteBuffer.wrap(encode(entry).getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write task switch log", e);
+        }
+        nextSeq++;
+        channelLastSeq = entry.seq();
+        queue.add(entry);
+        track(entry);
+        return queue.size() >= batchSize;
+    }
+
+    public boolean hasPending(Long userId) {
+        return pendingStates.containsKey(userId);
+    }
+
+    // Makes sure everything logged for the user so far is in the DB
+    public void flushUser(Long userId) {
+        if (hasPending(userId)) {
+            flush();
+        }
+    }
+
+    // Writes every logged switch to the DB before returning
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushPending(false);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFlushedSwitches() {
+        return flushedSwitches;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Entries stay queued and are retried on the next run
+            log.warn("Task switch write-behind flush failed, {} switches pending: {}", pendingCount(), e.getMessage());
+        }
+    }
+
+    private void flushPending(boolean recovering) {
+        while (true) {
+            List<Switch> batch;
+            lock.lock();
+            try {
+                batch = queue.stream().limit(batchSize).toList();
+            } finally {
+                lock.unlock();
+            }
+            if (batch.isEmpty()) return;
+
+            long started = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> writeBatch(batch, recovering));
+            long lastSeq = batch.get(batch.size() - 1).seq();
+            lock.lock();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    queue.poll();
+                }
+                pendingStates.values().removeIf(state -> state.seq() <= lastSeq);
+                pendingKeys.values().removeIf(entry -> entry.seq() <= lastSeq);
+                deleteSegmentsUpTo(lastSeq);
+            } finally {
+                lock.unlock();
+            }
+            flushedSwitches += batch.size();
+            log.debug("Flushed {} task switches in {} ms", batch.size(), (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private void writeBatch(List<Switch> batch, boolean recovering) {
+        // Applied in log order, so the last switch of each user wins. An entry only applies
+        // over the state it was logged against; once one is dropped, the later entries of
+        // that user no longer match either.
+        int[][] counts = jdbcTemplate.batchUpdate(
+                "UPDATE users SET current_task_id = ?, current_task_start_time = ? WHERE id = ? " +
+                "AND (current_task_id = ? OR (current_task_id IS NULL AND ? IS NULL)) " +
+                "AND (current_task_start_time = ? OR (current_task_start_time IS NULL AND ? IS NULL))",
+                batch, batch.size(), (ps, entry) -> {
+                    setNullable(ps, 1, entry.taskId());
+                    ps.setLong(2, entry.time());
+                    ps.setLong(3, entry.userId());
+                    setNullable(ps, 4, entry.previousTaskId());
+                    setNullable(ps, 5, entry.previousTaskId());
+                    setNullable(ps, 6, entry.previousStartTime());
+                    setNullable(ps, 7, entry.previousStartTime());
+                });
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Switch> applied = new ArrayList<>();
+        Set<Long> skippedUsers = new LinkedHashSet<>();
+        List<TimeRecord> records = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Switch entry = batch.get(i);
+            // 0 means the state did not match; a driver that cannot tell reports
+            // SUCCESS_NO_INFO, taken as applied
+            if (counts[0][i] == 0) {
+                log.warn("Dropping logged task switch {} of user {}: the user's task changed meanwhile", entry.seq(), entry.userId());
+                skippedUsers.add(entry.userId());
+                continue;
+            }
+            applied.add(entry);
+            TimeRecord record = toRecord(entry, now);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+
+        if (!records.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO time_records (user_id, task_id, start_time, end_time, duration, record_date, record_day, counted, created_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    records, records.size(), (ps, record) -> {
+                        ps.setLong(1, record.getUserId());
+                        ps.setLong(2, record.getTaskId());
+                        ps.setLong(3, record.getStartTime());
+                        ps.setLong(4, record.getEndTime());
+                        ps.setLong(5, record.getDuration());
+                        ps.setString(6, record.getRecordDate());
+                        ps.setDate(7, Date.valueOf(record.getRecordDay()));
+                        ps.setBoolean(8, record.getCounted());
+                        ps.setTimestamp(9, Timestamp.valueOf(record.getCreatedAt()));
+                    });
+        }
+
+        // Same outcome as TaskService#trySwitch records for a keyed switch. A key already
+        // there came from the direct path while the log was paused; the first one stays.
+        List<Switch> keyed = applied.stream().filter(entry -> entry.idempotencyKey() != null).toList();
+        if (!keyed.isEmpty()) {
+            Timestamp createdAt = Timestamp.valueOf(now);
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO switch_requests (user_id, idempotency_key, task_id, start_time, created_at) " +
+                    "SELECT ?, ?, ?, ?, ? FROM DUAL WHERE NOT EXISTS " +
+                    "(SELECT 1 FROM switch_requests WHERE user_id = ? AND idempotency_key = ?)",
+                    keyed, keyed.size(), (ps, entry) -> {
+                        ps.setLong(1, entry.userId());
+                        ps.setString(2, entry.idempotencyKey());
+                        setNullable(ps, 3, entry.taskId());
+                        ps.setLong(4, entry.time());
+                        ps.setTimestamp(5, createdAt);
+                        ps.setLong(6, entry.userId());
+                        ps.setString(7, entry.idempotencyKey());
+                    });
+        }
+
+        jdbcTemplate.update("UPDATE write_behind_checkpoints SET last_seq = ? WHERE node_id = ?",
+                batch.get(batch.size() - 1).seq(), checkpointId);
+
+        for (TimeRecord record : records) {
+            eventPublisher.publishEvent(new TimeRecordSavedEvent(record));
+        }
+        Map<Long, Switch> lastByUser = new LinkedHashMap<>();
+        if (recovering) {
+            // Caches built at startup read the DB before the replay
+            for (Switch entry : applied) {
+                lastByUser.put(entry.userId(), entry);
+            }
+        }
+        for (Switch entry : lastByUser.values()) {
+            if (!skippedUsers.contains(entry.userId())) {
+                eventPublisher.publishEvent(new UserStateChangedEvent(entry.userId(), entry.taskId(), entry.time(), entry.time()));
+            }
+        }
+        // The caches were told the dropped states when they were logged; put the DB's back
+        for (Long userId : skippedUsers) {
+            jdbcTemplate.query("SELECT current_task_id, current_task_start_time FROM users WHERE id = ?",
+                    rs -> {
+                        eventPublisher.publishEvent(new UserStateChangedEvent(userId,
+                                rs.getObject(1, Long.class), rs.getObject(2, Long.class), null));
+                    }, userId);
+        }
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, value);
+        }
+    }
+
+    // Same rules as TaskService#saveTimeRecord
+    private TimeRecord toRecord(Switch entry, LocalDateTime createdAt) {
+        if (entry.previousTaskId() == null || entry.previousStartTime() == null) return null;
+        long duration = entry.time() - entry.previousStartTime();
+        if (duration < 1000) return null;
+
+        return timeRecordFactory.create(entry.userId(), entry.previousTaskId(), entry.previousStartTime(),
+                entry.time(), createdAt);
+    }
+
+    // Queues the log entries past this node's checkpoint and writes them to the DB. Runs even
+    // when write-behind has been switched off since, so nothing logged is ever lost.
+    private void recover(List<Path> segments) throws IOException {
+        List<Long> checkpointSeq = jdbcTemplate.queryForList(
+                "SELECT last_seq FROM write_behind_checkpoints WHERE node_id = ?", Long.class, checkpointId);
+        long checkpoint = checkpointSeq.isEmpty() ? 0 : checkpointSeq.get(0);
+        long lastSeq = checkpoint;
+
+        int replayed = 0;
+        for (Path segment : segments) {
+            for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+                Switch entry = decode(line);
+                if (entry == null) {
+                    // A line torn by the crash; it was never acknowledged
+                    log.warn("Ignoring damaged entry at the end of {}", segment);
+                    break;
+                }
+                lastSeq = Math.max(lastSeq, entry.seq());
+                if (entry.seq() > checkpoint) {
+                    queue.add(entry);
+                    track(entry);
+                    replayed++;
+                }
+            }
+        }
+        nextSeq = lastSeq + 1;
+
+        if (replayed > 0) {
+            log.warn("Replaying {} task switches not yet written to the DB", replayed);
+            flushPending(true);
+        }
+        for (Path segment : segments) {
+            Files.delete(segment);
+        }
+    }
+
+    private void track(Switch entry) {
+        pendingStates.put(entry.userId(), new PendingState(entry.seq(), entry.taskId(), entry.time()));
+        if (entry.idempotencyKey() != null) {
+            pendingKeys.put(new KeyOf(entry.userId(), entry.idempotencyKey()), entry);
+        }
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(SwitchWriteBehind::firstSeqOf))
+                    .toList();
+        }
+    }
+
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void openSegment(Path directory) throws IOException {
+        channelPath = directory.resolve(SEGMENT_PREFIX + nextSeq + SEGMENT_SUFFIX);
+        channel = FileChannel.open(channelPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void deleteSegmentsUpTo(long seq) {
+        Iterator<Segment> it = closedSegments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment.lastSeq() > seq) break;
+            try {
+                Files.deleteIfExists(segment.path());
+                it.remove();
+            } catch (IOException e) {
+                log.warn("Could not delete task switch log segment {}: {}", segment.path(), e.getMessage());
+                break;
+            }
+        }
+    }
+
+    // seq userId previousTaskId previousStartTime time taskId [key] crc, "-" for null and the
+    // key in Base64 so it holds no spaces. Entries without a key keep the older six fields.
+    private static String encode(Switch entry) {
+        String body = entry.seq() + " " + entry.userId() + " " + orDash(entry.previousTaskId()) + " "
+                + orDash(entry.previousStartTime()) + " " + entry.time() + " " + orDash(entry.taskId());
+        if (entry.idempotencyKey() != null) {
+            body += " " + Base64.getEncoder().encodeToString(entry.idempotencyKey().getBytes(StandardCharsets.UTF_8));
+        }
+        return body + " " + Long.toHexString(crc(body)) + "\n";
+    }
+
+    private static Switch decode(String line) {
+        int lastSpace = line.lastIndexOf(' ');
+        if (lastSpace < 0) return null;
+        String body = line.substring(0, lastSpace);
+        String[] parts = body.split(" ");
+        try {
+            if ((parts.length != 6 && parts.length != 7)
+                    || Long.parseLong(line.substring(lastSpace + 1), 16) != crc(body)) return null;
+            String key = parts.length == 7
+                    ? new String(Base64.getDecoder().decode(parts[6]), StandardCharsets.UTF_8)
+                    : null;
+            return new Switch(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parseNullable(parts[2]),
+                    parseNullable(parts[3]), Long.parseLong(parts[4]), parseNullable(parts[5]), key);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long crc(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String orDash(Long value) {
+        return value == null ? "-" : value.toString();
+    }
+
+    private static Long parseNullable(String value) {
+        return "-".equals(value) ? null : Long.parseLong(value);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TaskChangedEvent;
+import com.example.examhelper.event.TaskOrderChangedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.model.Task;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Each user's task list in display order, as returned by getTasks. Dropped when one of the
+// user's tasks or their order changes, and for everyone when a global task changes. The
+// cached lists are shared between requests and must not be modified.
+@Component
+public class TaskListCache {
+
+    @Value("${app.task-list-cache.max-size:2000}")
+    private int maxSize;
+
+    // Guarded by this
+    private final LinkedHashMap<Long, List<Task>> byUser = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<Task>> eldest) {
+            return size() > maxSize;
+        }
+    };
+    private long generation;
+
+    public List<Task> get(Long userId, Supplier<List<Task>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            List<Task> tasks = byUser.get(userId);
+            if (tasks != null) return tasks;
+            loadGeneration = generation;
+        }
+        // Loaded outside the lock; not cached if an invalidation happened meanwhile
+        List<Task> tasks = List.copyOf(loader.get());
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                byUser.put(userId, tasks);
+            }
+        }
+        return tasks;
+    }
+
+    public synchronized void evict(Long userId) {
+        generation++;
+        byUser.remove(userId);
+    }
+
+    @EventListener
+    public void onTaskOrderChanged(TaskOrderChangedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> evict(event.userId()));
+    }
+
+    @EventListener
+    public void onTaskChanged(TaskChangedEvent event) {
+        Long userId = event.task().getUserId();
+        TransactionCallbacks.onCompletion(committed -> {
+            if (userId != null) {
+                evict(userId);
+            } else {
+                synchronized (this) {
+                    generation++;
+                    byUser.clear();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TaskChangedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.model.Task;
+import com.example.examhelper.repository.TaskRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read-through cache of task metadata shared by the chart and aggregation code, so they
+// never load the tasks table (or one task per row) again. Each user also gets a view of
+// every task they can have records for: their own tasks, deleted ones included, plus the
+// global ones.
+@Component
+@RequiredArgsConstructor
+public class TaskMetadataCache {
+
+    private final TaskRepository taskRepository;
+
+    @Value("${app.task-cache.max-user-views:2000}")
+    private int maxUserViews;
+
+    public record TaskMeta(Long id, String name, Long userId, Boolean recordsTag, boolean deleted, boolean counted) {
+
+        static TaskMeta of(Task task) {
+            return new TaskMeta(task.getId(), task.getName(), task.getUserId(), task.getRecordsTag(),
+                    Boolean.TRUE.equals(task.getDeleted()), task.isCounted());
+        }
+
+        public boolean isSystem() {
+            return userId == null;
+        }
+    }
+
+    // Ids that do not exist are cached as empty so they are not looked up again
+    private final Map<Long, Optional<TaskMeta>> byId = new ConcurrentHashMap<>();
+
+    // Guarded by itself
+    private final LinkedHashMap<Long, Map<Long, TaskMeta>> userViews = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Map<Long, TaskMeta>> eldest) {
+            return size() > maxUserViews;
+        }
+    };
+    private volatile Map<Long, TaskMeta> globalTasks;
+    // Bumped (under userViews) by every change; anything loaded while it moved may predate
+    // the change, so it is returned to the caller but not cached. Guarded by userViews.
+    private long changeStamp;
+
+    public TaskMeta get(Long taskId) {
+        Optional<TaskMeta> meta = byId.get(taskId);
+        if (meta == null) {
+            // Queried outside the map, so no map lock is held (or virtual thread pinned) during I/O
+            long stamp = stamp();
+            Optional<TaskMeta> loaded = taskRepository.findById(taskId).map(TaskMeta::of);
+            synchronized (userViews) {
+                if (stamp != changeStamp) return loaded.orElse(null);
+                Optional<TaskMeta> previous = byId.putIfAbsent(taskId, loaded);
+                meta = previous != null ? previous : loaded;
+            }
+        }
+        return meta.orElse(null);
+    }
+
+    // Counted flag to copy onto a new record of the task; records of unknown tasks never count
+    public boolean isCounted(Long taskId) {
+        TaskMeta task = get(taskId);
+        return task != null && task.counted();
+    }
+
+    // Tasks visible to the user keyed by id; ids outside that view are looked up individually
+    public Map<Long, TaskMeta> getAll(Long userId, Collection<Long> taskIds) {
+        Map<Long, TaskMeta> view = forUser(userId);
+        List<Long> missing = taskIds.stream().filter(id -> !view.containsKey(id)).distinct().toList();
+        if (missing.isEmpty()) {
+            return view;
+        }
+        Map<Long, TaskMeta> result = new HashMap<>(view);
+        for (Long id : missing) {
+            TaskMeta meta = get(id);
+            if (meta != null) {
+                result.put(id, meta);
+            }
+        }
+        return result;
+    }
+
+    public Map<Long, TaskMeta> forUser(Long userId) {
+        long stamp;
+        synchronized (userViews) {
+            Map<Long, TaskMeta> view = userViews.get(userId);
+            if (view != null) return view;
+            stamp = changeStamp;
+        }
+        Map<Long, TaskMeta> view = new HashMap<>(globals());
+        List<TaskMeta> own = taskRepository.findByUserId(userId).stream().map(TaskMeta::of).toList();
+        for (TaskMeta meta : own) {
+            view.put(meta.id(), meta);
+        }
+        view = Collections.unmodifiableMap(view);
+        synchronized (userViews) {
+            if (stamp == changeStamp) {
+                for (TaskMeta meta : own) {
+                    byId.put(meta.id(), Optional.of(meta));
+                }
+                Map<Long, TaskMeta> previous = userViews.putIfAbsent(userId, view);
+                if (previous != null) return previous;
+            }
+        }
+        return view;
+    }
+
+    private Map<Long, TaskMeta> globals() {
+        Map<Long, TaskMeta> globals = globalTasks;
+        if (globals == null) {
+            long stamp = stamp();
+            Map<Long, TaskMeta> loaded = new HashMap<>();
+            for (Task task : taskRepository.findByUserIdIsNull()) {
+                loaded.put(task.getId(), TaskMeta.of(task));
+            }
+            globals = Collections.unmodifiableMap(loaded);
+            synchronized (userViews) {
+                if (stamp == changeStamp) {
+                    globalTasks = globals;
+                }
+            }
+        }
+        return globals;
+    }
+
+    private long stamp() {
+        synchronized (userViews) {
+            return changeStamp;
+        }
+    }
+
+    @EventListener
+    public void onTaskChanged(TaskChangedEvent event) {
+        TaskMeta meta = TaskMeta.of(event.task());
+        TransactionCallbacks.onCompletion(committed -> {
+            if (committed) {
+                update(meta);
+            } else {
+                evict(meta.id());
+            }
+        });
+    }
+
+    private void update(TaskMeta meta) {
+        synchronized (userViews) {
+            changeStamp++;
+            byId.put(meta.id(), Optional.of(meta));
+            if (meta.isSystem()) {
+                globalTasks = null;
+                userViews.clear();
+                return;
+            }
+            Map<Long, TaskMeta> view = userViews.get(meta.userId());
+            if (view != null) {
+                Map<Long, TaskMeta> updated = new HashMap<>(view);
+                updated.put(meta.id(), meta);
+                userViews.put(meta.userId(), Collections.unmodifiableMap(updated));
+            }
+        }
+    }
+
+    public void evict(Long taskId) {
+        synchronized (userViews) {
+            changeStamp++;
+            Optional<TaskMeta> previous = byId.remove(taskId);
+            globalTasks = null;
+            if (previous != null && previous.isPresent() && previous.get().userId() != null) {
+                userViews.remove(previous.get().userId());
+            } else {
+                userViews.clear();
+            }
+        }
+    }
+}
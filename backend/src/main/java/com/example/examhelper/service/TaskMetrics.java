@@ -0,0 +1,61 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.TransactionCallbacks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+// Application counters and scheduled-job timers. Request timings (http.server.requests),
+// repository method timings (spring.data.repository.invocations) and connection pool stats
+// (hikaricp.*) are recorded by Spring Boot itself.
+@Component
+public class TaskMetrics {
+
+    private final MeterRegistry registry;
+    private final Counter switches;
+    private final Counter settlements;
+    private final Counter recordsWritten;
+
+    public TaskMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.switches = Counter.builder("app.task.switches")
+                .description("Task switches requested by users")
+                .register(registry);
+        this.settlements = Counter.builder("app.task.settlements")
+                .description("Running tasks settled at the end of a day, by the job or by the user")
+                .register(registry);
+        this.recordsWritten = Counter.builder("app.time.records.written")
+                .description("Committed new time_records rows")
+                .register(registry);
+    }
+
+    public void switched() {
+        switches.increment();
+    }
+
+    public void settled(int users) {
+        settlements.increment(users);
+    }
+
+    // Times one run of a scheduled job, tagged with the job name
+    public void timeJob(String job, Runnable run) {
+        Timer.builder("app.scheduled.job")
+                .description("Duration of scheduled job runs")
+                .tag("job", job)
+                .register(registry)
+                .record(run);
+    }
+
+    @EventListener
+    public void onTimeRecordSaved(TimeRecordSavedEvent event) {
+        if (ClusterChangeLog.isReplaying()) return; // counted by the node that wrote it
+        TransactionCallbacks.onCompletion(committed -> {
+            if (committed) {
+                recordsWritten.increment();
+            }
+        });
+    }
+}
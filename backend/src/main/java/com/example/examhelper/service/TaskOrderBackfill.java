@@ -0,0 +1,66 @@
+package com.example.examhelper.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Moves orders saved in the old users.task_order column (comma-joined task ids) into
+// user_task_order, then clears the column so each user is converted once. Databases created
+// after the column was dropped from the entity do not have it, and there is nothing to do.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class TaskOrderBackfill {
+
+    // Same spacing as TaskService uses when it reranks
+    private static final long RANK_STEP = 1L << 30;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void run() {
+        List<Map<String, Object>> users;
+        try {
+            users = jdbcTemplate.queryForList(
+                    "SELECT id, task_order FROM users WHERE task_order IS NOT NULL AND task_order <> ''");
+        } catch (DataAccessException e) {
+            return; // no task_order column
+        }
+        if (users.isEmpty()) return;
+
+        int rows = 0;
+        for (Map<String, Object> user : users) {
+            long userId = ((Number) user.get("id")).longValue();
+            Set<Long> taskIds = new LinkedHashSet<>();
+            for (String part : user.get("task_order").toString().split(",")) {
+                try {
+                    taskIds.add(Long.parseLong(part.trim()));
+                } catch (NumberFormatException e) {
+                    // ignore
+                }
+            }
+            List<Object[]> batch = new ArrayList<>();
+            long rank = 0;
+            for (Long taskId : taskIds) {
+                rank += RANK_STEP;
+                batch.add(new Object[]{userId, taskId, rank});
+            }
+            jdbcTemplate.update("DELETE FROM user_task_order WHERE user_id = ?", userId);
+            jdbcTemplate.batchUpdate("INSERT INTO user_task_order (user_id, task_id, sort_rank) VALUES (?, ?, ?)", batch);
+            jdbcTemplate.update("UPDATE users SET task_order = NULL WHERE id = ?", userId);
+            rows += batch.size();
+        }
+        log.info("Moved task order of {} users into user_task_order ({} rows)", users.size(), rows);
+    }
+}
@@ -1,25 +1,45 @@
 package com.example.examhelper.service;
 
+import com.example.examhelper.dto.CheckInStatus;
+import com.example.examhelper.dto.LineChartData;
+import com.example.examhelper.dto.PieChartData;
+import com.example.examhelper.dto.TimelineData;
+import com.example.examhelper.event.TaskChangedEvent;
+import com.example.examhelper.event.TaskOrderChangedEvent;
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.event.TimeRecordsInvalidatedEvent;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.event.UserUpdatedEvent;
+import com.example.examhelper.model.SwitchRequest;
 import com.example.examhelper.model.Task;
 import com.example.examhelper.model.TimeRecord;
 import com.example.examhelper.model.User;
+import com.example.examhelper.model.UserTaskOrder;
+import com.example.examhelper.repository.SwitchRequestRepository;
 import com.example.examhelper.repository.TaskRepository;
 import com.example.examhelper.repository.TimeRecordRepository;
 import com.example.examhelper.repository.UserRepository;
+import com.example.examhelper.repository.UserTaskOrderRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,76 +50,118 @@ public class TaskService {
     private final TaskRepository taskRepository;
     private final TimeRecordRepository timeRecordRepository;
     private final UserRepository userRepository;
+    private final DailyRollupStore dailyRollupStore;
+    private final PeriodRollupStore periodRollupStore;
+    private final DailyLeaderboard dailyLeaderboard;
+    private final IdleUserTracker idleUserTracker;
+    private final DailySettlementJob dailySettlementJob;
+    private final TaskMetadataCache taskMetadataCache;
+    private final TimeRecordFactory timeRecordFactory;
+    private final SwitchWriteBehind switchWriteBehind;
+    private final UserTaskOrderRepository userTaskOrderRepository;
+    private final SwitchRequestRepository switchRequestRepository;
+    private final TaskListCache taskListCache;
+    private final TaskMetrics taskMetrics;
+    private final ActiveSessionRegistry activeSessionRegistry;
+    private final ClusterJobLock clusterJobLock;
+    private final AggregateRecompute aggregateRecompute;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private TransactionTemplate switchTransaction;
 
     private static final Long LEAVE_TASK_ID = 1L;
+    private static final int MAX_SWITCH_ATTEMPTS = 8;
+    // Gap between neighbouring ranks after a rerank; about 30 moves into the same gap fit
+    private static final long RANK_STEP = 1L << 30;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    @PostConstruct
+    public void init() {
+        // Each switch attempt reads and commits on its own, also when called inside a
+        // transaction (deleteTask): a retry joining the caller's transaction would read the
+        // user from its persistence context and never see the change it lost to
+        switchTransaction = new TransactionTemplate(transactionManager);
+        switchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     public List<Task> getTasks(Long userId) {
-        List<Task> tasks = taskRepository.findByUserIdOrUserIdIsNull(userId);
-        User user = userRepository.findById(userId).orElse(null);
-
-        if (user != null && user.getTaskOrder() != null && !user.getTaskOrder().isEmpty()) {
-            String[] orderStrs = user.getTaskOrder().split(",");
-            List<Long> orderList = new ArrayList<>();
-            for (String s : orderStrs) {
-                try {
-                    orderList.add(Long.parseLong(s));
-                } catch (NumberFormatException e) {
-                    // ignore
-                }
-            }
+        return taskListCache.get(userId, () -> taskRepository.findOrderedForUser(userId));
+    }
 
-            Map<Long, Integer> orderMap = new HashMap<>();
-            for (int i = 0; i < orderList.size(); i++) {
-                orderMap.put(orderList.get(i), i);
-            }
+    // Replaces the whole order; only rows whose rank changes are written
+    @Transactional
+    public void updateTaskOrder(Long userId, List<Long> taskIds) {
+        userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+        rerank(userId, taskIds);
+    }
 
-            tasks.sort((t1, t2) -> {
-                Integer idx1 = orderMap.get(t1.getId());
-                Integer idx2 = orderMap.get(t2.getId());
-
-                if (idx1 != null && idx2 != null) {
-                    return idx1.compareTo(idx2);
-                } else if (idx1 != null) {
-                    return -1; // t1 comes first
-                } else if (idx2 != null) {
-                    return 1; // t2 comes first
-                } else {
-                    // Both not in order list, fallback to default
-                    return compareDefault(t1, t2);
-                }
-            });
-        } else {
-            tasks.sort(this::compareDefault);
+    // Moves one task right after another (afterTaskId null = to the top). Normally this writes
+    // only the moved task's row, with a rank halfway between its new neighbours; the user's
+    // ranks are spread out again when there is no gap left or some tasks have no rank yet.
+    @Transactional
+    public void moveTask(Long userId, Long taskId, Long afterTaskId) {
+        List<Long> order = new ArrayList<>(getTasks(userId).stream().map(Task::getId).toList());
+        if (!order.remove(taskId) || (afterTaskId != null && !order.contains(afterTaskId))) {
+            throw new RuntimeException("Task not found");
         }
-
-        return tasks;
+        int position = afterTaskId == null ? 0 : order.indexOf(afterTaskId) + 1;
+        order.add(position, taskId);
+
+        Map<Long, Long> ranks = userTaskOrderRepository.findByUserId(userId).stream()
+                .collect(Collectors.toMap(UserTaskOrder::getTaskId, UserTaskOrder::getSortRank));
+        Long previous = position > 0 ? ranks.get(order.get(position - 1)) : null;
+        Long next = position + 1 < order.size() ? ranks.get(order.get(position + 1)) : null;
+        boolean neighboursRanked = (position == 0 || previous != null) && (position + 1 == order.size() || next != null);
+        if (neighboursRanked && order.stream().allMatch(ranks::containsKey)) {
+            long low = previous != null ? previous : next - 2 * RANK_STEP;
+            long high = next != null ? next : previous + 2 * RANK_STEP;
+            if (high - low >= 2) {
+                userTaskOrderRepository.save(new UserTaskOrder(userId, taskId, low + (high - low) / 2));
+                eventPublisher.publishEvent(new TaskOrderChangedEvent(userId));
+                return;
+            }
+        }
+        rerank(userId, order);
     }
 
-    private int compareDefault(Task t1, Task t2) {
-        boolean t1Global = t1.getUserId() == null;
-        boolean t2Global = t2.getUserId() == null;
-
-        if (t1Global && !t2Global) return -1;
-        if (!t1Global && t2Global) return 1;
-        return t1.getId().compareTo(t2.getId());
+    private void rerank(Long userId, List<Long> taskIds) {
+        Map<Long, UserTaskOrder> existing = userTaskOrderRepository.findByUserId(userId).stream()
+                .collect(Collectors.toMap(UserTaskOrder::getTaskId, o -> o));
+        List<UserTaskOrder> changed = new ArrayList<>();
+        long rank = 0;
+        for (Long id : new LinkedHashSet<>(taskIds)) {
+            rank += RANK_STEP;
+            UserTaskOrder row = existing.remove(id);
+            if (row == null || row.getSortRank() != rank) {
+                changed.add(new UserTaskOrder(userId, id, rank));
+            }
+        }
+        userTaskOrderRepository.saveAll(changed);
+        // Tasks left out of the list fall back to the default order, as before
+        userTaskOrderRepository.deleteAll(existing.values());
+        eventPublisher.publishEvent(new TaskOrderChangedEvent(userId));
     }
 
-    @Transactional
-    public void updateTaskOrder(Long userId, List<Long> taskIds) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
-        String orderStr = taskIds.stream().map(String::valueOf).collect(Collectors.joining(","));
-        user.setTaskOrder(orderStr);
-        userRepository.save(user);
+    // Appends the task to the end of its owner's order, so it shows up where it did before
+    private void appendToOrder(Task task) {
+        UserTaskOrder last = userTaskOrderRepository.findFirstByUserIdOrderBySortRankDesc(task.getUserId());
+        if (last != null) {
+            userTaskOrderRepository.save(new UserTaskOrder(task.getUserId(), task.getId(), last.getSortRank() + RANK_STEP));
+        }
     }
 
+    @Transactional
     public Task addTask(String name, Long userId) {
         Task task = new Task();
         task.setName(name);
         task.setUserId(userId);
         task.setDeleted(false);
         task.setRecordsTag(true); // Default to record
-        return taskRepository.save(task);
+        task = taskRepository.save(task);
+        appendToOrder(task);
+        eventPublisher.publishEvent(new TaskChangedEvent(task));
+        return task;
     }
 
     @Transactional
@@ -107,6 +169,7 @@ public class TaskService {
         if (LEAVE_TASK_ID.equals(taskId)) {
             throw new RuntimeException("Cannot delete Leave task");
         }
+        switchWriteBehind.flushUser(userId);
         
         Task task = taskRepository.findById(taskId)
                 .orElseThrow(() -> new RuntimeException("Task not found"));
@@ -120,67 +183,182 @@ public class TaskService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         // Remove task from sort order
-        if (user.getTaskOrder() != null && !user.getTaskOrder().isEmpty()) {
-            List<String> orderList = new ArrayList<>(Arrays.asList(user.getTaskOrder().split(",")));
-            if (orderList.remove(String.valueOf(taskId))) {
-                user.setTaskOrder(String.join(",", orderList));
-                userRepository.save(user);
-            }
-        }
+        userTaskOrderRepository.deleteByUserIdAndTaskId(userId, taskId);
         
         if (taskId.equals(user.getCurrentTaskId())) {
             // Switch to Leave task to settle time and reset status
-            user = switchTask(userId, LEAVE_TASK_ID);
+            user = switchTask(userId, LEAVE_TASK_ID, null);
         }
         
         task.setDeleted(true);
         taskRepository.save(task);
+        eventPublisher.publishEvent(new TaskChangedEvent(task));
         return user;
     }
 
-    @Transactional
-    public User switchTask(Long userId, Long newTaskId) {
+    // Lock-free switch: reads the user's current task, then moves them to the new one with an
+    // UPDATE conditional on the start time it read (see UserRepository#switchIfUnchanged). Only
+    // the switch whose UPDATE matches saves the record of the task that ended, so concurrent
+    // switches from other devices, the Leave assignment or settlement can neither duplicate nor
+    // overlap records; a switch that lost the race reads again and retries. No row lock is held
+    // between the read and the write.
+    //
+    // With an idempotency key, a repeated request returns the result of the first one instead
+    // of switching again, so clients can retry safely. A key already used for another task is
+    // rejected.
+    public User switchTask(Long userId, Long newTaskId, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            User done = completedSwitch(userId, newTaskId, idempotencyKey);
+            if (done != null) return done;
+        }
+        taskMetrics.switched();
+        if (switchWriteBehind.isEnabled()) {
+            User user = switchTaskWriteBehind(userId, newTaskId, idempotencyKey);
+            if (user != null) return user;
+        }
+        for (int attempt = 1; ; attempt++) {
+            User user;
+            try {
+                user = switchTransaction.execute(status -> trySwitch(userId, newTaskId, idempotencyKey));
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent request with the same key recorded it first; this attempt rolled back
+                User done = idempotencyKey == null ? null : completedSwitch(userId, newTaskId, idempotencyKey);
+                if (done == null) throw e;
+                return done;
+            }
+            if (user != null) return user;
+            if (attempt == MAX_SWITCH_ATTEMPTS) {
+                throw new RuntimeException("Task switch conflicted with concurrent changes, please retry");
+            }
+            backOff(attempt);
+            if (idempotencyKey != null) {
+                // The request we raced with may have been this one, sent again
+                User done = completedSwitch(userId, newTaskId, idempotencyKey);
+                if (done != null) return done;
+            }
+        }
+    }
+
+    // Random wait growing with each lost race, so a burst of switches spreads out instead of
+    // colliding again on the next attempt
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5L * attempt, 20L * attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Task switch interrupted", e);
+        }
+    }
+
+    // One attempt; null when the user's task changed after it was read
+    private User trySwitch(Long userId, Long newTaskId, String idempotencyKey) {
         User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
-        long now = System.currentTimeMillis();
+        Long previousTaskId = user.getCurrentTaskId();
+        Long previousStartTime = user.getCurrentTaskStartTime();
+        // Always after the previous start, even if another node's clock is ahead of ours: an
+        // equal start time would let a later compare-and-set match a state it never read
+        long now = previousStartTime == null
+                ? System.currentTimeMillis()
+                : Math.max(System.currentTimeMillis(), previousStartTime + 1);
+
+        if (userRepository.switchIfUnchanged(userId, newTaskId, now, previousStartTime) == 0) {
+            log.debug("Task switch of user {} lost a race, retrying", userId);
+            return null;
+        }
+        if (previousTaskId != null && previousStartTime != null) {
+            saveTimeRecord(userId, previousTaskId, previousStartTime, now);
+        }
+        if (idempotencyKey != null) {
+            switchRequestRepository.saveAndFlush(new SwitchRequest(userId, idempotencyKey, newTaskId, now, LocalDateTime.now()));
+        }
+        return withState(user, newTaskId, now);
+    }
 
-        // 1. Settle current task if exists
-        if (user.getCurrentTaskId() != null && user.getCurrentTaskStartTime() != null) {
-            saveTimeRecord(user, now);
+    // The result of an earlier switch sent with this key, or null. The write-behind log is
+    // asked first: its keys reach switch_requests before they leave the log.
+    private User completedSwitch(Long userId, Long newTaskId, String idempotencyKey) {
+        SwitchWriteBehind.Logged logged = switchWriteBehind.loggedSwitch(userId, idempotencyKey);
+        if (logged != null) {
+            User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+            return repeatedSwitch(user, newTaskId, idempotencyKey, logged.taskId(), logged.startTime());
         }
+        return switchRequestRepository.findById(new SwitchRequest.Key(userId, idempotencyKey))
+                .map(done -> {
+                    User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+                    return repeatedSwitch(user, newTaskId, idempotencyKey, done.getTaskId(), done.getStartTime());
+                })
+                .orElse(null);
+    }
+
+    private static User repeatedSwitch(User user, Long newTaskId, String idempotencyKey, Long taskId, Long startTime) {
+        if (!Objects.equals(taskId, newTaskId)) {
+            throw new RuntimeException("Idempotency-Key was already used for another task");
+        }
+        log.debug("Task switch of user {} with key {} already done", user.getId(), idempotencyKey);
+        return copyWithState(user, taskId, startTime);
+    }
+
+    // The switch only goes to the write-behind log; the managed user is left untouched so
+    // nothing is written to the DB here. The idempotency key travels with the log entry and
+    // is recorded when it is flushed. Null when the log refused the switch (paused or
+    // shutting down).
+    private User switchTaskWriteBehind(Long userId, Long newTaskId, String idempotencyKey) {
+        long epoch = switchWriteBehind.epoch();
+        User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+        long now = System.currentTimeMillis();
+        SwitchWriteBehind.Logged logged = switchWriteBehind.append(userId, user.getCurrentTaskId(),
+                user.getCurrentTaskStartTime(), newTaskId, now, epoch, idempotencyKey);
+        if (logged == null) {
+            return null;
+        }
+        if (logged.repeated()) {
+            return repeatedSwitch(user, newTaskId, idempotencyKey, logged.taskId(), logged.startTime());
+        }
+        return withState(user, newTaskId, now);
+    }
 
-        // 2. Start new task
-        user.setCurrentTaskId(newTaskId);
-        user.setCurrentTaskStartTime(now);
-        return userRepository.save(user);
+    // A detached copy of the user in the given state, published as the user's new state
+    private User withState(User user, Long taskId, Long startTime) {
+        User result = copyWithState(user, taskId, startTime);
+        publishUserState(result, startTime);
+        return result;
+    }
+
+    private static User copyWithState(User user, Long taskId, Long startTime) {
+        User result = new User();
+        BeanUtils.copyProperties(user, result);
+        result.setCurrentTaskId(taskId);
+        result.setCurrentTaskStartTime(startTime);
+        return result;
     }
 
-    private void saveTimeRecord(User user, long endTime) {
-        long startTime = user.getCurrentTaskStartTime();
+    private void publishUserState(User user, Long changedAt) {
+        eventPublisher.publishEvent(new UserStateChangedEvent(user.getId(), user.getCurrentTaskId(),
+                user.getCurrentTaskStartTime(), changedAt));
+    }
+
+    private void saveTimeRecord(Long userId, Long taskId, long startTime, long endTime) {
         long duration = endTime - startTime;
         
         if (duration < 1000) return; // Ignore very short durations (< 1s)
 
-        TimeRecord record = new TimeRecord();
-        record.setUserId(user.getId());
-        record.setTaskId(user.getCurrentTaskId());
-        record.setStartTime(startTime);
-        record.setEndTime(endTime);
-        record.setDuration(duration);
-        
-        // Use logical date (4 AM rule)
-        record.setRecordDate(getLogicalDate(startTime));
-        
-        record.setCreatedAt(LocalDateTime.now());
-        
+        TimeRecord record = timeRecordFactory.create(userId, taskId, startTime, endTime, LocalDateTime.now());
         timeRecordRepository.save(record);
+        eventPublisher.publishEvent(new TimeRecordSavedEvent(record));
+    }
+
+    // Keys only need to outlive client retries
+    @Scheduled(cron = "0 20 * * * ?")
+    @Transactional
+    public void purgeSwitchRequests() {
+        clusterJobLock.runExclusively("purgeSwitchRequests", Duration.ofMinutes(10), Duration.ofMinutes(1), () -> {
+            int deleted = switchRequestRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(1));
+            log.debug("Purged {} switch idempotency keys", deleted);
+        });
     }
 
     private String getLogicalDate(long timestamp) {
-        ZonedDateTime zdt = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault());
-        if (zdt.getHour() < 4) {
-            zdt = zdt.minusDays(1);
-        }
-        return zdt.toLocalDate().format(DATE_FORMATTER);
+        return LogicalDay.of(timestamp);
     }
 
     // 8:00 AM Schedule
@@ -188,19 +366,12 @@ public class TaskService {
     @Transactional
     public void checkMorningTasks() {
         log.info("Running 8 AM Task Check");
-        List<User> users = userRepository.findAll();
-        long now = System.currentTimeMillis();
-
-        for (User user : users) {
-            // If task is empty, set to Leave
-            if (user.getCurrentTaskId() == null) {
-                user.setCurrentTaskId(LEAVE_TASK_ID);
-                user.setCurrentTaskStartTime(now);
-                userRepository.save(user);
-                log.info("Set user {} to Leave status", user.getUsername());
-            }
-            // If task is not empty (user started early), do nothing, keep counting.
-        }
+        // Users who started early keep counting; only idle users are set to Leave
+        clusterJobLock.runExclusively("checkMorningTasks", Duration.ofMinutes(10), Duration.ofMinutes(1),
+                () -> taskMetrics.timeJob("checkMorningTasks", () -> {
+                    int changed = assignLeaveToIdleUsers();
+                    log.info("Set {} users to Leave status", changed);
+                }));
     }
 
     // Check mandatory task selection every 10 seconds between 8:00 and 23:00 (stops at 23:00)
@@ -208,35 +379,46 @@ public class TaskService {
     @Scheduled(cron = "*/10 * 8-22 * * ?")
     @Transactional
     public void checkMandatoryTask() {
-        List<User> users = userRepository.findAll();
+        clusterJobLock.runExclusively("checkMandatoryTask", Duration.ofMinutes(1), Duration.ofSeconds(5),
+                () -> taskMetrics.timeJob("checkMandatoryTask", this::assignLeaveToIdleUsers));
+    }
+
+    // Moves the tracked idle users onto the Leave task with one conditional UPDATE instead of
+    // scanning the users table
+    private int assignLeaveToIdleUsers() {
+        if (idleUserTracker.isEmpty()) return 0;
+        switchWriteBehind.flush();
+
+        List<Long> userIds = idleUserTracker.snapshot();
         long now = System.currentTimeMillis();
-        
-        for (User user : users) {
-             if (user.getCurrentTaskId() == null) {
-                 user.setCurrentTaskId(LEAVE_TASK_ID);
-                 user.setCurrentTaskStartTime(now);
-                 userRepository.save(user);
-                 // Reduce log spam by checking if log level is debug or trace, or just remove info log for every 10s check
-                 // log.info("Mandatory task enforcement: Set user {} to Leave status", user.getUsername());
-             }
+        int changed = userRepository.assignTaskToIdleUsers(userIds, LEAVE_TASK_ID, now);
+
+        if (changed == userIds.size()) {
+            for (Long userId : userIds) {
+                eventPublisher.publishEvent(new UserStateChangedEvent(userId, LEAVE_TASK_ID, now, now));
+            }
+        } else {
+            // Some of them were not idle any more; report their actual state
+            for (User user : userRepository.findAllById(userIds)) {
+                publishUserState(user, null);
+            }
         }
+        idleUserTracker.passCompleted(userIds, changed);
+        return changed;
     }
 
     // 24:00 (Midnight) Schedule -> Changed to 04:00 AM
+    // Runs in chunks with a commit per chunk, see DailySettlementJob
     @Scheduled(cron = "0 0 4 * * ?")
-    @Transactional
     public void settleDailyTasks() {
         log.info("Running 4 AM Settlement");
-        List<User> users = userRepository.findAll();
-        long now = System.currentTimeMillis();
-
-        for (User user : users) {
-            settleUserTask(user, now);
-        }
+        clusterJobLock.runExclusively(DailySettlementJob.LOCK_NAME, DailySettlementJob.LOCK_AT_MOST, Duration.ofMinutes(10),
+                () -> taskMetrics.timeJob("settleDailyTasks", () -> dailySettlementJob.run(System.currentTimeMillis())));
     }
 
     @Transactional
     public void settleUserDailyTask(Long userId) {
+        switchWriteBehind.flushUser(userId);
         User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
         
         // Validate time: Must be after 23:00
@@ -252,171 +434,123 @@ public class TaskService {
         if (user.getCurrentTaskId() != null && user.getCurrentTaskStartTime() != null) {
             // Calculate duration
             long startTime = user.getCurrentTaskStartTime();
-            long duration = now - startTime;
 
-            // Use the start time to determine the record date
             // With 4 AM settlement, tasks starting before 4 AM belong to the previous logical day
-            String recordDate = getLogicalDate(startTime);
-
-            TimeRecord record = new TimeRecord();
-            record.setUserId(user.getId());
-            record.setTaskId(user.getCurrentTaskId());
-            record.setStartTime(startTime);
-            record.setEndTime(now);
-            record.setDuration(duration);
-            record.setRecordDate(recordDate);
-            record.setCreatedAt(LocalDateTime.now());
+            TimeRecord record = timeRecordFactory.create(user.getId(), user.getCurrentTaskId(), startTime, now,
+                    LocalDateTime.now());
+            // Clear user status, unless a concurrent switch already ended this task
+            if (userRepository.switchIfUnchanged(user.getId(), null, null, startTime) == 0) {
+                throw new RuntimeException("Task changed meanwhile, please retry");
+            }
             timeRecordRepository.save(record);
-
-            // Clear user status
-            user.setCurrentTaskId(null);
-            user.setCurrentTaskStartTime(null);
-            userRepository.save(user);
+            eventPublisher.publishEvent(new TimeRecordSavedEvent(record));
+            taskMetrics.settled(1);
+            publishUserState(copyWithState(user, null, null), now);
         }
     }
 
     // Chart Data Helpers
-    public Map<String, Object> getPieChartData(Long userId, String date) {
-        List<TimeRecord> records = timeRecordRepository.findByUserIdAndRecordDate(userId, date);
-        Map<Long, Long> durationByTask = records.stream()
-                .collect(Collectors.groupingBy(TimeRecord::getTaskId, Collectors.summingLong(TimeRecord::getDuration)));
+    public PieChartData getPieChartData(Long userId, String date) {
+        switchWriteBehind.flushUser(userId);
+        Map<Long, Long> durationByTask = dailyRollupStore.getDay(userId, date).durationByTask();
+        Map<Long, TaskMetadataCache.TaskMeta> tasks = taskMetadataCache.getAll(userId, durationByTask.keySet());
 
-        List<Map<String, Object>> data = new ArrayList<>();
+        List<PieChartData.Slice> data = new ArrayList<>(durationByTask.size());
         for (Map.Entry<Long, Long> entry : durationByTask.entrySet()) {
-            Task task = taskRepository.findById(entry.getKey()).orElse(null);
-            String taskName = (task != null) ? task.getName() : "Unknown Task";
-            
-            Map<String, Object> item = new HashMap<>();
-            item.put("name", taskName);
-            item.put("value", entry.getValue()); // Duration in ms
-            item.put("formatted", formatDuration(entry.getValue()));
-            data.add(item);
+            TaskMetadataCache.TaskMeta task = tasks.get(entry.getKey());
+            String taskName = (task != null) ? task.name() : "Unknown Task";
+            long duration = entry.getValue(); // Duration in ms
+            data.add(new PieChartData.Slice(taskName, duration, formatDuration(duration)));
         }
         
         // Sort by value (duration) descending
-        data.sort((a, b) -> Long.compare((Long) b.get("value"), (Long) a.get("value")));
-        
-        log.info("Pie Chart Data for user {} on {}: {}", userId, date, data);
+        data.sort(Comparator.comparingLong(PieChartData.Slice::value).reversed());
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("data", data);
-        return result;
+        log.debug("Pie Chart Data for user {} on {}: {}", userId, date, data);
+        return new PieChartData(data);
     }
 
-    public Map<String, Object> getLineChartData(Long userId, String startDate, String endDate) {
-        List<TimeRecord> records = timeRecordRepository.findByUserIdAndDateRange(userId, startDate, endDate);
-        
-        List<Task> allTasks = taskRepository.findAll();
-        
-        // Filter tasks based on recordsTag
-        // If recordsTag is present: true -> include, false -> exclude
-        // If recordsTag is null: fallback to old logic (exclude system tasks where userId is null)
-        Set<Long> excludedTaskIds = allTasks.stream()
-                .filter(t -> {
-                    if (t.getRecordsTag() != null) {
-                        return !t.getRecordsTag(); // Exclude if false (0)
-                    }
-                    return t.getUserId() == null; // Fallback: Exclude if system task
-                })
-                .map(Task::getId)
-                .collect(Collectors.toSet());
+    public LineChartData getLineChartData(Long userId, String startDate, String endDate) {
+        return getSeries(userId, PeriodRollupStore.Granularity.DAY, startDate, endDate);
+    }
 
-        // Group by Date -> Sum Duration, filtering out excluded tasks
-        Map<String, Long> durationByDate = records.stream()
-                .filter(record -> !excludedTaskIds.contains(record.getTaskId()))
-                .collect(Collectors.groupingBy(TimeRecord::getRecordDate, Collectors.summingLong(TimeRecord::getDuration)));
+    public LineChartData getSeries(Long userId, PeriodRollupStore.Granularity granularity, String startDate, String endDate) {
+        switchWriteBehind.flushUser(userId);
+        // Totals only include counted tasks (see Task#isCounted)
+        List<PeriodRollupStore.Bucket> buckets = periodRollupStore.series(userId, granularity,
+                LocalDate.parse(startDate, DATE_FORMATTER), LocalDate.parse(endDate, DATE_FORMATTER));
+        List<String> labels = new ArrayList<>(buckets.size());
+        long[] durations = new long[buckets.size()]; // In ms
+        for (int i = 0; i < buckets.size(); i++) {
+            labels.add(buckets.get(i).label());
+            durations[i] = buckets.get(i).duration();
+        }
+        return new LineChartData(labels, durations);
+    }
 
-        List<String> dates = new ArrayList<>();
-        List<Long> durations = new ArrayList<>();
-        
-        LocalDate start = LocalDate.parse(startDate, DATE_FORMATTER);
-        LocalDate end = LocalDate.parse(endDate, DATE_FORMATTER);
+    public TimelineData getTimelineData(Long userId, String date) {
+        switchWriteBehind.flushUser(userId);
+        List<TimeRecord> records = timeRecordRepository.findByUserIdAndRecordDay(userId, LocalDate.parse(date));
+        records.sort(Comparator.comparingLong(TimeRecord::getStartTime));
+        Set<Long> taskIds = records.stream().map(TimeRecord::getTaskId).collect(Collectors.toSet());
+        Map<Long, TaskMetadataCache.TaskMeta> tasks = taskMetadataCache.getAll(userId, taskIds);
+
+        List<TimelineData.TaskInfo> taskInfos = new ArrayList<>();
+        Map<Long, Integer> taskIndex = new HashMap<>();
+        int n = records.size();
+        long[] ids = new long[n];
+        int[] taskIdx = new int[n];
+        long[] startTimes = new long[n];
+        long[] endTimes = new long[n];
+        long[] durations = new long[n];
+        for (int i = 0; i < n; i++) {
+            TimeRecord record = records.get(i);
+            ids[i] = record.getId();
+            taskIdx[i] = taskIndex.computeIfAbsent(record.getTaskId(), id -> addTaskInfo(taskInfos, tasks.get(id)));
+            startTimes[i] = record.getStartTime();
+            endTimes[i] = record.getEndTime();
+            durations[i] = record.getDuration() == null ? 0L : record.getDuration();
+        }
 
-        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
-            String dateStr = date.format(DATE_FORMATTER);
-            dates.add(dateStr);
-            durations.add(durationByDate.getOrDefault(dateStr, 0L));
+        // Add the running task if it started on this day
+        TimelineData.Current current = null;
+        ActiveSessionRegistry.Session session = activeSessionRegistry.get(userId);
+        if (session != null && LogicalDay.of(session.startTime()).equals(date)) {
+            long now = System.currentTimeMillis();
+            int idx = taskIndex.computeIfAbsent(session.taskId(), id -> addTaskInfo(taskInfos, taskMetadataCache.get(id)));
+            current = new TimelineData.Current(idx, session.startTime(), now, now - session.startTime());
         }
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("dates", dates);
-        result.put("durations", durations); // In ms
-        return result;
+        return new TimelineData(taskInfos, ids, taskIdx, startTimes, endTimes, durations, current);
     }
 
-    public List<Map<String, Object>> getTimelineData(Long userId, String date) {
-        List<TimeRecord> records = timeRecordRepository.findByUserIdAndRecordDate(userId, date);
-        List<Task> allTasks = taskRepository.findAll();
-        Map<Long, String> taskNames = allTasks.stream().collect(Collectors.toMap(Task::getId, Task::getName));
-        Map<Long, Long> taskUserIds = allTasks.stream().collect(Collectors.toMap(Task::getId, t -> t.getUserId() == null ? 0L : t.getUserId()));
-        Map<Long, Boolean> taskRecordsTags = allTasks.stream().collect(Collectors.toMap(Task::getId, t -> {
-            if (Boolean.TRUE.equals(t.getRecordsTag())) return true;
-            if (t.getRecordsTag() == null && t.getUserId() != null) return true;
-            return false;
-        }));
-
-        List<Map<String, Object>> timeline = new ArrayList<>();
-        
-        for (TimeRecord record : records) {
-            Map<String, Object> item = new HashMap<>();
-            item.put("id", record.getId());
-            item.put("taskName", taskNames.getOrDefault(record.getTaskId(), "Unknown"));
-            item.put("startTime", record.getStartTime());
-            item.put("endTime", record.getEndTime());
-            item.put("duration", record.getDuration());
-            item.put("isSystem", taskUserIds.get(record.getTaskId()) == 0L);
-            item.put("recordsTag", taskRecordsTags.getOrDefault(record.getTaskId(), false));
-            timeline.add(item);
-        }
-
-        // Add current task if it's today
-        if (LocalDate.now().format(DATE_FORMATTER).equals(date)) {
-            User user = userRepository.findById(userId).orElse(null);
-            if (user != null && user.getCurrentTaskId() != null && user.getCurrentTaskStartTime() != null) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("id", "CURRENT");
-                item.put("taskName", taskNames.getOrDefault(user.getCurrentTaskId(), "Unknown"));
-                item.put("startTime", user.getCurrentTaskStartTime());
-                item.put("endTime", System.currentTimeMillis());
-                item.put("duration", System.currentTimeMillis() - user.getCurrentTaskStartTime());
-                item.put("isSystem", taskUserIds.get(user.getCurrentTaskId()) == 0L);
-                item.put("recordsTag", taskRecordsTags.getOrDefault(user.getCurrentTaskId(), false));
-                timeline.add(item);
-            }
-        }
-        
-        // Sort by start time
-        timeline.sort((a, b) -> Long.compare((Long)a.get("startTime"), (Long)b.get("startTime")));
-        
-        return timeline;
+    private static int addTaskInfo(List<TimelineData.TaskInfo> taskInfos, TaskMetadataCache.TaskMeta task) {
+        taskInfos.add(new TimelineData.TaskInfo(task != null ? task.name() : "Unknown",
+                task != null && task.isSystem(), task != null && task.counted()));
+        return taskInfos.size() - 1;
     }
 
-    public Map<String, Object> getCheckInStatus(Long userId) {
+    public CheckInStatus getCheckInStatus(Long userId) {
+        switchWriteBehind.flushUser(userId);
         User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
         String endDate = LocalDate.now().format(DATE_FORMATTER);
         String startDate = LocalDate.now().minusDays(6).format(DATE_FORMATTER); // Last 7 days including today
         
-        Map<String, Object> lineData = getLineChartData(userId, startDate, endDate);
-        List<String> dates = (List<String>) lineData.get("dates");
-        List<Long> durations = (List<Long>) lineData.get("durations");
-        
-        List<Map<String, Object>> statusList = new ArrayList<>();
+        List<DailyRollupStore.DayTotals> days = dailyRollupStore.getRange(userId, startDate, endDate);
+        List<CheckInStatus.DayStatus> statusList = new ArrayList<>(days.size());
         long goalMs = user.getDailyGoal() * 3600000L;
+        long now = System.currentTimeMillis();
         
-        for (int i = 0; i < dates.size(); i++) {
-            Map<String, Object> status = new HashMap<>();
-            status.put("date", dates.get(i));
-            status.put("duration", durations.get(i));
-            status.put("metGoal", durations.get(i) >= goalMs);
-            statusList.add(status);
+        for (DailyRollupStore.DayTotals day : days) {
+            // Includes the running task, so the goal shows as met as soon as it is
+            long duration = day.countedDuration() + activeSessionRegistry.liveDuration(userId, day.date(), now);
+            statusList.add(new CheckInStatus.DayStatus(day.date(), duration, duration >= goalMs));
         }
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("dailyGoal", user.getDailyGoal());
-        result.put("statusList", statusList);
-        return result;
+        return new CheckInStatus(user.getDailyGoal(), statusList);
     }
 
+    @Transactional
     public void updateTaskRecordsTag(Long userId, Long taskId, Boolean recordsTag) {
         Task task = taskRepository.findById(taskId).orElseThrow(() -> new RuntimeException("Task not found"));
         if (task.getUserId() == null || !task.getUserId().equals(userId)) {
@@ -424,9 +558,16 @@ public class TaskService {
         }
         task.setRecordsTag(recordsTag);
         taskRepository.save(task);
+        // The task's records carry a copy of its counted flag
+        timeRecordRepository.updateCountedForTask(taskId, task.isCounted());
+        aggregateRecompute.refreshUser(userId);
+        eventPublisher.publishEvent(new TaskChangedEvent(task));
+        // Day totals were computed with the old tag
+        eventPublisher.publishEvent(new TimeRecordsInvalidatedEvent(userId));
     }
 
     public Map<String, Object> getRankingStats(Long userId, String startDate, String endDate) {
+        switchWriteBehind.flushUser(userId);
         Map<String, Object> result = new HashMap<>();
         
         // 1. Today's Ranking
@@ -467,17 +608,9 @@ public class TaskService {
         }
         String logicalTodayStr = logicalToday.format(DATE_FORMATTER);
         
-        List<Object[]> todayStats = timeRecordRepository.findUserDurationsByDate(logicalTodayStr);
-        long totalUsers = userRepository.count();
-        
-        int myRank = -1;
-        for (int i = 0; i < todayStats.size(); i++) {
-            Long uid = ((Number) todayStats.get(i)[0]).longValue();
-            if (uid.equals(userId)) {
-                myRank = i + 1;
-                break;
-            }
-        }
+        long totalUsers = dailyLeaderboard.totalUsers();
+        // Running tasks count as if they ended now
+        int myRank = dailyLeaderboard.rankOf(logicalTodayStr, userId, System.currentTimeMillis());
         
         if (myRank != -1) {
             result.put("todayRank", myRank + "/" + totalUsers);
@@ -487,32 +620,26 @@ public class TaskService {
 
         // 2. Cumulative Duration (Range based)
         // If startDate/endDate provided, use them. Else total.
-        Long totalDuration;
+        long totalDuration;
         if (startDate != null && endDate != null) {
-             totalDuration = timeRecordRepository.getTotalDurationByUserIdAndDateRange(userId, startDate, endDate);
+             totalDuration = periodRollupStore.total(userId, LocalDate.parse(startDate), LocalDate.parse(endDate));
         } else {
-             totalDuration = timeRecordRepository.getTotalDurationByUserId(userId);
+             totalDuration = periodRollupStore.total(userId);
         }
         
-        if (totalDuration == null) totalDuration = 0L;
         result.put("totalDuration", formatDuration(totalDuration));
 
         // 3. Yesterday's Top 3
         // Yesterday relative to logicalToday
         String logicalYesterdayStr = logicalToday.minusDays(1).format(DATE_FORMATTER);
-        List<Object[]> yesterdayStats = timeRecordRepository.findUserDurationsByDate(logicalYesterdayStr);
+        List<Long> yesterdayTop = dailyLeaderboard.top(logicalYesterdayStr, 3);
+        Map<Long, String> names = dailyLeaderboard.userNames(yesterdayTop);
         
         List<Map<String, Object>> top3 = new ArrayList<>();
-        int limit = Math.min(yesterdayStats.size(), 3);
-        
-        for (int i = 0; i < limit; i++) {
-            Long uid = ((Number) yesterdayStats.get(i)[0]).longValue();
-            User u = userRepository.findById(uid).orElse(null);
-            String name = (u != null) ? u.getUsername() : "Unknown";
-            
+        for (int i = 0; i < yesterdayTop.size(); i++) {
             Map<String, Object> entry = new HashMap<>();
             entry.put("rank", i + 1);
-            entry.put("name", name);
+            entry.put("name", names.get(yesterdayTop.get(i)));
             top3.add(entry);
         }
         result.put("yesterdayTop3", top3);
@@ -520,7 +647,7 @@ public class TaskService {
         return result;
     }
 
-    private String formatDuration(long millis) {
+    static String formatDuration(long millis) {
         long seconds = millis / 1000;
         long minutes = (seconds % 3600) / 60;
         long hours = seconds / 3600;
@@ -534,6 +661,7 @@ public class TaskService {
 
     @Transactional
     public void updateTimeRecord(Long userId, Long recordId, Long newStartTime, Long newEndTime) {
+        switchWriteBehind.flushUser(userId);
         User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
         if (!Boolean.TRUE.equals(user.getCanEditTime())) {
             throw new RuntimeException("Permission denied: Cannot edit time records");
@@ -557,15 +685,11 @@ public class TaskService {
         record.setDuration(newEndTime - newStartTime);
         
         // Update recordDate based on newStartTime (Logical Day)
-        ZonedDateTime zdt = Instant.ofEpochMilli(newStartTime).atZone(ZoneId.systemDefault());
-        if (zdt.getHour() < 4) {
-            zdt = zdt.minusDays(1);
-        }
-        record.setRecordDate(zdt.toLocalDate().format(DATE_FORMATTER));
+        record.setRecordDate(getLogicalDate(newStartTime));
         
         timeRecordRepository.save(record);
 
-        List<TimeRecord> dayRecords = timeRecordRepository.findByUserIdAndRecordDate(userId, recordDate);
+        List<TimeRecord> dayRecords = timeRecordRepository.findByUserIdAndRecordDay(userId, LocalDate.parse(recordDate));
         
         if (newEndTime != oldEndTime) {
             for (TimeRecord r : dayRecords) {
@@ -578,8 +702,13 @@ public class TaskService {
             }
             if (user.getCurrentTaskId() != null && user.getCurrentTaskStartTime() != null) {
                  if (Math.abs(user.getCurrentTaskStartTime() - oldEndTime) < 5000) {
-                     user.setCurrentTaskStartTime(newEndTime);
-                     userRepository.save(user);
+                     // Same compare-and-set as a switch, so a switch that committed since the
+                     // user was read is not overwritten
+                     if (userRepository.switchIfUnchanged(userId, user.getCurrentTaskId(), newEndTime, user.getCurrentTaskStartTime()) == 0) {
+                         throw new RuntimeException("Current task changed while editing, please retry");
+                     }
+                     // Moving the start back must still replace the later one the listeners hold
+                     publishUserState(copyWithState(user, user.getCurrentTaskId(), newEndTime), null);
                  }
             }
         }
@@ -594,6 +723,11 @@ public class TaskService {
                 }
             }
         }
+
+        LocalDate oldDay = LocalDate.parse(recordDate);
+        LocalDate newDay = LocalDate.parse(record.getRecordDate());
+        aggregateRecompute.invalidate(newDay.isBefore(oldDay) ? newDay : oldDay);
+        eventPublisher.publishEvent(new TimeRecordsInvalidatedEvent(userId));
     }
 
     public void grantTimeEditPermission(Long adminId, Long targetUserId, Boolean canEdit) {
@@ -605,5 +739,6 @@ public class TaskService {
         User target = userRepository.findById(targetUserId).orElseThrow(() -> new RuntimeException("User not found"));
         target.setCanEditTime(canEdit);
         userRepository.save(target);
+        eventPublisher.publishEvent(new UserUpdatedEvent(targetUserId));
     }
 }
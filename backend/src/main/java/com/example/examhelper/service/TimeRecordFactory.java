@@ -0,0 +1,31 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.model.TimeRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+// Builds every time record the application writes (switches, settlement, write-behind
+// replay and import), so the logical day and the counted flag are derived in one place.
+@Component
+@RequiredArgsConstructor
+public class TimeRecordFactory {
+
+    private final TaskMetadataCache taskMetadataCache;
+
+    public TimeRecord create(Long userId, Long taskId, long startTime, long endTime, LocalDateTime createdAt) {
+        TimeRecord record = new TimeRecord();
+        record.setUserId(userId);
+        record.setTaskId(taskId);
+        record.setStartTime(startTime);
+        record.setEndTime(endTime);
+        record.setDuration(endTime - startTime);
+        // Logical date of the start (4 AM rule)
+        record.setRecordDate(LogicalDay.of(startTime));
+        record.setRecordDay(LogicalDay.dateOf(startTime));
+        record.setCounted(taskMetadataCache.isCounted(taskId));
+        record.setCreatedAt(createdAt);
+        return record;
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.dto.ImportResult;
+import com.example.examhelper.event.TimeRecordsInvalidatedEvent;
+import com.example.examhelper.model.TimeRecord;
+import com.example.examhelper.model.User;
+import com.example.examhelper.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Bulk export and import of a user's time records. Export reads a forward-only result set
+// and writes each row as it arrives, so memory does not grow with the number of rows: the
+// default fetch size of Integer.MIN_VALUE makes MySQL stream rows one by one (other
+// databases take a positive app.transfer.fetch-size). Import parses the body line by line
+// and inserts valid rows in JDBC batches, one transaction per batch.
+@Component
+@Slf4j
+public class TimeRecordTransfer {
+
+    private static final String[] COLUMNS = {"id", "userId", "taskId", "startTime", "endTime", "duration", "recordDate"};
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserRepository userRepository;
+    private final TaskMetadataCache taskMetadataCache;
+    private final TimeRecordFactory timeRecordFactory;
+    private final SwitchWriteBehind switchWriteBehind;
+    private final AggregateRecompute aggregateRecompute;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.transfer.batch-size:1000}")
+    private int batchSize;
+
+    public TimeRecordTransfer(DataSource dataSource, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                              UserRepository userRepository, TaskMetadataCache taskMetadataCache,
+                              TimeRecordFactory timeRecordFactory, SwitchWriteBehind switchWriteBehind,
+                              AggregateRecompute aggregateRecompute, ApplicationEventPublisher eventPublisher,
+                              ObjectMapper objectMapper, @Value("${app.transfer.fetch-size:-2147483648}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = new JdbcTemplate(dataSource);
+        this.cursorTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = transactionTemplate;
+        this.userRepository = userRepository;
+        this.taskMetadataCache = taskMetadataCache;
+        this.timeRecordFactory = timeRecordFactory;
+        this.switchWriteBehind = switchWriteBehind;
+        this.aggregateRecompute = aggregateRecompute;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+    }
+
+    // The user's records in [from, to] (both optional) by logical day
+    public void export(Long userId, LocalDate from, LocalDate to, Format format, OutputStream out) throws IOException {
+        switchWriteBehind.flushUser(userId);
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, user_id, task_id, start_time, end_time, duration, record_date FROM time_records WHERE user_id = ?");
+        List<Object> args = new ArrayList<>(List.of(userId));
+        if (from != null) {
+            sql.append(" AND record_day >= ?");
+            args.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND record_day <= ?");
+            args.add(Date.valueOf(to));
+        }
+        // idx_time_records_user_day_counted finds the user's rows, but within a day it is ordered
+        // by counted and duration, not id, so this sorts; the sort only covers this user's rows
+        sql.append(" ORDER BY record_day, id");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        if (format == Format.CSV) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+        }
+        long started = System.currentTimeMillis();
+        long[] rows = {0};
+        Object[] values = new Object[COLUMNS.length];
+        cursorTemplate.query(sql.toString(), rs -> {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rs.getObject(i + 1);
+            }
+            try {
+                writeRow(writer, format, values);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows[0]++;
+        }, args.toArray());
+        writer.flush();
+        log.info("Exported {} time records of user {} in {} ms", rows[0], userId, System.currentTimeMillis() - started);
+    }
+
+    private static void writeRow(Writer writer, Format format, Object[] values) throws IOException {
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                if (values[i] != null) writer.write(values[i].toString());
+            }
+        } else {
+            writer.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write('"');
+                writer.write(COLUMNS[i]);
+                writer.write("\":");
+                if (values[i] == null) {
+                    writer.write("null");
+                } else if (values[i] instanceof Number) {
+                    writer.write(values[i].toString());
+                } else {
+                    // Only record_date is a string, and it is always yyyy-MM-dd
+                    writer.write('"');
+                    writer.write(values[i].toString());
+                    writer.write('"');
+                }
+            }
+            writer.write('}');
+        }
+        writer.write('\n');
+    }
+
+    // Imports records for the user; needs the same permission as editing records. Each line
+    // needs taskId, startTime and endTime (epoch ms); a userId, if present, must be the user's
+    // own. Duration and the logical day are computed here; other columns, such as those of
+    // an export, are ignored. Invalid lines are skipped and reported.
+    public ImportResult importRecords(Long userId, Format format, InputStream in) throws IOException {
+        User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+        if (!Boolean.TRUE.equals(user.getCanEditTime())) {
+            throw new RuntimeException("Permission denied: Cannot edit time records");
+        }
+        Map<Long, TaskMetadataCache.TaskMeta> tasks = taskMetadataCache.forUser(userId);
+
+        long started = System.currentTimeMillis();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        Map<String, Integer> header = format == Format.CSV ? csvHeader(reader.readLine()) : null;
+        int lineNumber = format == Format.CSV ? 1 : 0;
+        long imported = 0;
+        long rejected = 0;
+        List<String> errors = new ArrayList<>();
+        List<TimeRecord> batch = new ArrayList<>(batchSize);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate earliestDay = null;
+
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                try {
+                    Map<String, String> fields = format == Format.CSV ? csvFields(header, line) : jsonFields(line);
+                    TimeRecord record = toRecord(userId, fields, tasks, now);
+                    batch.add(record);
+                    if (earliestDay == null || record.getRecordDay().isBefore(earliestDay)) {
+                        earliestDay = record.getRecordDay();
+                    }
+                } catch (RuntimeException e) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add("line " + lineNumber + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (batch.size() == batchSize) {
+                    imported += insert(batch);
+                    batch.clear();
+                }
+            }
+            imported += insert(batch);
+        } finally {
+            // Batches commit one by one, so those before a failed one are in the DB either way
+            if (imported > 0) {
+                aggregateRecompute.invalidate(earliestDay);
+                eventPublisher.publishEvent(new TimeRecordsInvalidatedEvent(userId));
+            }
+        }
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - started);
+        long rowsPerSecond = imported * 1000L / elapsedMs;
+        log.info("Imported {} time records for user {} ({} rejected) in {} ms ({} rows/s)",
+                imported, userId, rejected, elapsedMs, rowsPerSecond);
+        return new ImportResult(imported, rejected, errors, elapsedMs, rowsPerSecond);
+    }
+
+    private TimeRecord toRecord(Long userId, Map<String, String> fields, Map<Long, TaskMetadataCache.TaskMeta> tasks,
+                           LocalDateTime now) {
+        String recordUser = fields.get("userId");
+        if (recordUser != null && !recordUser.isEmpty() && Long.parseLong(recordUser) != userId) {
+            throw new IllegalArgumentException("record belongs to another user");
+        }
+        long taskId = required(fields, "taskId");
+        long startTime = required(fields, "startTime");
+        long endTime = required(fields, "endTime");
+        if (!tasks.containsKey(taskId)) {
+            throw new IllegalArgumentException("unknown task " + taskId);
+        }
+        if (startTime >= endTime) {
+            throw new IllegalArgumentException("startTime must be before endTime");
+        }
+        return timeRecordFactory.create(userId, taskId, startTime, endTime, now);
+    }
+
+    private static long required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing " + name);
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + name + " '" + value + "'");
+        }
+    }
+
+    private int insert(List<TimeRecord> batch) {
+        if (batch.isEmpty()) return 0;
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                "INSERT INTO time_records (user_id, task_id, start_time, end_time, duration, record_date, record_day, counted, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                batch, batch.size(), (ps, record) -> {
+                    ps.setLong(1, record.getUserId());
+                    ps.setLong(2, record.getTaskId());
+                    ps.setLong(3, record.getStartTime());
+                    ps.setLong(4, record.getEndTime());
+                    ps.setLong(5, record.getDuration());
+                    ps.setString(6, record.getRecordDate());
+                    ps.setDate(7, Date.valueOf(record.getRecordDay()));
+                    ps.setBoolean(8, record.getCounted());
+                    ps.setTimestamp(9, Timestamp.valueOf(record.getCreatedAt()));
+                }));
+        return batch.size();
+    }
+
+    // Column positions by name; snake_case names are accepted as well
+    private static Map<String, Integer> csvHeader(String line) {
+        if (line == null) return Map.of();
+        Map<String, Integer> header = new HashMap<>();
+        String[] names = line.split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            header.put(camelCase(names[i].trim()), i);
+        }
+        return header;
+    }
+
+    private static Map<String, String> csvFields(Map<String, Integer> header, String line) {
+        String[] values = line.split(",", -1);
+        Map<String, String> fields = new HashMap<>();
+        header.forEach((name, i) -> {
+            if (i < values.length) {
+                fields.put(name, values[i].trim());
+            }
+        });
+        return fields;
+    }
+
+    private Map<String, String> jsonFields(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid JSON");
+        }
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("not a JSON object");
+        }
+        Map<String, String> fields = new HashMap<>();
+        node.fields().forEachRemaining(field -> {
+            if (!field.getValue().isNull()) {
+                fields.put(camelCase(field.getKey()), field.getValue().asText());
+            }
+        });
+        return fields;
+    }
+
+    private static String camelCase(String name) {
+        StringBuilder result = new StringBuilder(name.length());
+        boolean upper = false;
+        for (char c : name.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                result.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return result.toString();
+    }
+}
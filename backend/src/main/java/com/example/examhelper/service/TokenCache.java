@@ -0,0 +1,124 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.event.UserUpdatedEvent;
+import com.example.examhelper.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded, TTL-based token -> user cache for the authentication path. The cached User is
+// only used as the request principal (id, role, permissions); it is dropped whenever the
+// user is updated, and the current-task fields on it may lag behind.
+@Component
+@Slf4j
+public class TokenCache {
+
+    @Value("${app.token-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${app.token-cache.ttl:10m}")
+    private Duration ttl;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Entry> byToken = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxSize) {
+                tokenByUser.remove(eldest.getValue().user().getId());
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<Long, String> tokenByUser = new HashMap<>();
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record Entry(User user, long expiresAt) {
+    }
+
+    public synchronized User get(String token) {
+        Entry entry = byToken.get(token);
+        if (entry == null || entry.expiresAt() < System.currentTimeMillis()) {
+            if (entry != null) {
+                remove(token);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.user();
+    }
+
+    // Capture before reading the user from the DB and pass to put, so a lookup that raced
+    // with an invalidation does not re-cache stale data
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized void put(String token, User user, long generation) {
+        if (generation != this.generation) return;
+        String previous = tokenByUser.put(user.getId(), token);
+        if (previous != null && !previous.equals(token)) {
+            byToken.remove(previous);
+        }
+        byToken.put(token, new Entry(user, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    public synchronized void invalidateUser(Long userId) {
+        generation++;
+        String token = tokenByUser.remove(userId);
+        if (token != null) {
+            byToken.remove(token);
+        }
+    }
+
+    private void remove(String token) {
+        Entry entry = byToken.remove(token);
+        if (entry != null) {
+            tokenByUser.remove(entry.user().getId());
+        }
+    }
+
+    @EventListener
+    public void onUserUpdated(UserUpdatedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> invalidateUser(event.userId()));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return byToken.size();
+    }
+
+    @Scheduled(fixedDelay = 300000)
+    public void logStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        log.debug("Token cache: {} entries, {} hits / {} lookups, {} evictions",
+                size(), hitCount, total, evictions.get());
+    }
+}
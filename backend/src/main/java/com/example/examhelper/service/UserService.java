@@ -1,8 +1,12 @@
 package com.example.examhelper.service;
 
+import com.example.examhelper.event.UserRegisteredEvent;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.event.UserUpdatedEvent;
 import com.example.examhelper.model.User;
 import com.example.examhelper.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -11,6 +15,9 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class UserService {
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TokenCache tokenCache;
+    private final SwitchWriteBehind switchWriteBehind;
 
     public User login(String username, String password) {
         User user = userRepository.findByUsername(username)
@@ -20,7 +27,9 @@ public class UserService {
             // Only generate new token if one doesn't exist, to support multi-device/persistent login
             if (user.getToken() == null) {
                 user.setToken(java.util.UUID.randomUUID().toString());
-                return userRepository.save(user);
+                user = userRepository.save(user);
+                eventPublisher.publishEvent(new UserUpdatedEvent(user.getId()));
+                return user;
             }
             return user;
         }
@@ -28,7 +37,16 @@ public class UserService {
     }
 
     public User getUserByToken(String token) {
-        return userRepository.findByToken(token).orElse(null);
+        User user = tokenCache.get(token);
+        if (user != null) {
+            return user;
+        }
+        long generation = tokenCache.generation();
+        user = userRepository.findByToken(token).orElse(null);
+        if (user != null) {
+            tokenCache.put(token, user, generation);
+        }
+        return user;
     }
 
     public User register(String username, String password) {
@@ -40,17 +58,23 @@ public class UserService {
         user.setPassword(password);
         user.setCreatedAt(LocalDateTime.now());
         user.setDailyGoal(8); // Default
-        return userRepository.save(user);
+        user = userRepository.save(user);
+        eventPublisher.publishEvent(new UserRegisteredEvent(user.getId(), user.getUsername()));
+        eventPublisher.publishEvent(new UserStateChangedEvent(user.getId(), null, null, null));
+        return user;
     }
 
     public User updateDailyGoal(Long userId, Integer goal) {
         User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
         user.setDailyGoal(goal);
-        return userRepository.save(user);
+        user = userRepository.save(user);
+        eventPublisher.publishEvent(new UserUpdatedEvent(userId));
+        return user;
     }
 
 
     public User getUserById(Long id) {
+        switchWriteBehind.flushUser(id);
         return userRepository.findById(id).orElse(null);
     }
 }
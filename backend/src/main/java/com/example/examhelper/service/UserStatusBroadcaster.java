@@ -0,0 +1,193 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TransactionCallbacks;
+import com.example.examhelper.event.UserStateChangedEvent;
+import com.example.examhelper.event.UserUpdatedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Per-user registry of Server-Sent Event subscriptions. Every committed change to a user's
+// current task is pushed to all of that user's open dashboards.
+//
+// Sends run on a small dedicated pool and never block the writer. Each subscriber has at
+// most one send in flight; events arriving meanwhile are conflated to the newest one, so a
+// slow client only ever falls behind by one state.
+@Component
+@Slf4j
+public class UserStatusBroadcaster {
+
+    @Value("${app.status-stream.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${app.status-stream.max-subscriptions-per-user:5}")
+    private int maxSubscriptionsPerUser;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService sender = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "status-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public record UserState(Long currentTaskId, Long currentTaskStartTime) {
+    }
+
+    public SseEmitter subscribe(Long userId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        Set<Subscriber> userSubscribers = subscribers.computeIfAbsent(userId, id -> new CopyOnWriteArraySet<>());
+        userSubscribers.add(subscriber);
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        // Drop the oldest connections of users with too many open tabs
+        while (userSubscribers.size() > maxSubscriptionsPerUser) {
+            Subscriber oldest = userSubscribers.iterator().next();
+            unsubscribe(oldest);
+            oldest.emitter.complete();
+        }
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    public int subscriberCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @EventListener
+    public void onUserStateChanged(UserStateChangedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> {
+            if (committed) {
+                UserState state = new UserState(event.currentTaskId(), event.currentTaskStartTime());
+                forEachSubscriber(event.userId(), subscriber -> subscriber.offerState(state));
+            }
+        });
+    }
+
+    // Anything else about the user changed (e.g. permissions); clients re-fetch the user
+    @EventListener
+    public void onUserUpdated(UserUpdatedEvent event) {
+        TransactionCallbacks.onCompletion(committed -> {
+            if (committed) {
+                forEachSubscriber(event.userId(), Subscriber::offerRefresh);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.status-stream.heartbeat:PT20S}")
+    public void heartbeat() {
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            userSubscribers.forEach(Subscriber::offerHeartbeat);
+        }
+    }
+
+    private void forEachSubscriber(Long userId, Consumer<Subscriber> action) {
+        Set<Subscriber> userSubscribers = subscribers.get(userId);
+        if (userSubscribers != null) {
+            userSubscribers.forEach(action);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.computeIfPresent(subscriber.userId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private class Subscriber {
+        private final Long userId;
+        private final SseEmitter emitter;
+        // Only the newest state matters; refresh and heartbeat are flags
+        private final AtomicReference<UserState> pendingState = new AtomicReference<>();
+        private final AtomicBoolean pendingRefresh = new AtomicBoolean();
+        private final AtomicBoolean pendingHeartbeat = new AtomicBoolean();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offerState(UserState state) {
+            pendingState.set(state);
+            schedule();
+        }
+
+        void offerRefresh() {
+            pendingRefresh.set(true);
+            schedule();
+        }
+
+        // A connection that is busy sending does not need a keep-alive
+        void offerHeartbeat() {
+            if (!sending.get()) {
+                pendingHeartbeat.set(true);
+                schedule();
+            }
+        }
+
+        private boolean hasPending() {
+            return pendingState.get() != null || pendingRefresh.get() || pendingHeartbeat.get();
+        }
+
+        private void schedule() {
+            if (!closed && sending.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!closed && hasPending()) {
+                    if (pendingRefresh.getAndSet(false)) {
+                        emitter.send(SseEmitter.event().name("refresh").data(""));
+                    }
+                    UserState state = pendingState.getAndSet(null);
+                    if (state != null) {
+                        emitter.send(SseEmitter.event().name("state").data(state));
+                    }
+                    if (pendingHeartbeat.getAndSet(false)) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Dropping status stream of user {}: {}", userId, e.getMessage());
+                closed = true;
+                unsubscribe(this);
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+            // Something may have been offered between the last check and releasing the flag
+            if (hasPending()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TaskOrderChangedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Polling with ids committed out of order, against an in-memory cluster_change_log
+class ClusterChangeLogTest {
+
+    private FakeJdbcTemplate jdbcTemplate;
+    private final List<Object> events = new ArrayList<>();
+    private ClusterChangeLog changeLog;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new FakeJdbcTemplate();
+        ClusterNode clusterNode = mock(ClusterNode.class);
+        when(clusterNode.isEnabled()).thenReturn(true);
+        when(clusterNode.id()).thenReturn("a");
+        changeLog = new ClusterChangeLog(jdbcTemplate, new ObjectMapper(), events::add, clusterNode, mock(ClusterJobLock.class));
+        ReflectionTestUtils.setField(changeLog, "gapTimeout", Duration.ofHours(1));
+        jdbcTemplate.commit(10, "b");
+        changeLog.start();
+    }
+
+    @Test
+    void contiguousIdsAdvanceTheWatermark() {
+        jdbcTemplate.commit(11, "b");
+        jdbcTemplate.commit(12, "b");
+        jdbcTemplate.commit(13, "a");
+
+        changeLog.poll();
+
+        // 10 predates start, 13 is this node's own
+        assertThat(replayedIds()).containsExactly(11L, 12L);
+        assertThat(watermark()).isEqualTo(13);
+        assertThat(handled()).isEmpty();
+    }
+
+    @Test
+    void missingIdIsAskedForUntilItCommits() {
+        jdbcTemplate.commit(11, "b");
+        jdbcTemplate.commit(13, "b");
+
+        changeLog.poll();
+        assertThat(replayedIds()).containsExactly(11L, 13L);
+        assertThat(watermark()).isEqualTo(11);
+
+        changeLog.poll();
+        assertThat(jdbcTemplate.inQueries).containsExactly(List.of(12L));
+        assertThat(jdbcTemplate.pastQueries).containsExactly(10L, 13L);
+        assertThat(watermark()).isEqualTo(11);
+
+        jdbcTemplate.commit(12, "b");
+        jdbcTemplate.commit(14, "b");
+        changeLog.poll();
+
+        // 13 is not replayed twice
+        assertThat(replayedIds()).containsExactly(11L, 13L, 12L, 14L);
+        assertThat(watermark()).isEqualTo(14);
+        assertThat(handled()).isEmpty();
+    }
+
+    @Test
+    void gapIsSkippedAfterTheTimeout() {
+        ReflectionTestUtils.setField(changeLog, "gapTimeout", Duration.ZERO);
+        jdbcTemplate.commit(11, "b");
+        jdbcTemplate.commit(14, "b");
+
+        changeLog.poll();
+        changeLog.poll();
+
+        assertThat(replayedIds()).containsExactly(11L, 14L);
+        assertThat(watermark()).isEqualTo(14);
+        assertThat(jdbcTemplate.inQueries).isEmpty();
+    }
+
+    @Test
+    void missingIdsAreCappedPerPoll() {
+        jdbcTemplate.commit(11, "b");
+        jdbcTemplate.commit(2_000, "b");
+
+        changeLog.poll();
+        changeLog.poll();
+
+        assertThat(jdbcTemplate.inQueries).singleElement().satisfies(ids -> {
+            assertThat(ids).hasSize(500);
+            assertThat(ids.get(0)).isEqualTo(12L);
+            assertThat(ids.get(499)).isEqualTo(511L);
+        });
+        assertThat(watermark()).isEqualTo(11);
+    }
+
+    private List<Long> replayedIds() {
+        return events.stream().map(event -> ((TaskOrderChangedEvent) event).userId()).toList();
+    }
+
+    private long watermark() {
+        return (Long) ReflectionTestUtils.getField(changeLog, "watermark");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Long> handled() {
+        return (Set<Long>) ReflectionTestUtils.getField(changeLog, "handled");
+    }
+
+    // Committed rows by id; each row's payload carries its id as the userId, so the replayed
+    // events show which rows were handled
+    private static class FakeJdbcTemplate extends JdbcTemplate {
+
+        private final TreeMap<Long, Map<String, Object>> rows = new TreeMap<>();
+        final List<List<Long>> inQueries = new ArrayList<>();
+        final List<Long> pastQueries = new ArrayList<>();
+
+        void commit(long id, String origin) {
+            rows.put(id, Map.of("id", id, "origin", origin, "event_type", "TaskOrderChangedEvent",
+                    "payload", "{\"userId\":" + id + "}"));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            return (T) (rows.isEmpty() ? null : rows.lastKey());
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) {
+            if (sql.contains("WHERE id IN")) {
+                List<Long> ids = Arrays.stream(args).map(Long.class::cast).toList();
+                inQueries.add(ids);
+                return ids.stream().filter(rows::containsKey).map(rows::get).toList();
+            }
+            long after = (Long) args[0];
+            pastQueries.add(after);
+            return rows.tailMap(after, false).values().stream().limit(500).toList();
+        }
+    }
+}
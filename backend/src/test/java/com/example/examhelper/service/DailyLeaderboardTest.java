@@ -0,0 +1,78 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.ActiveSessionChangedEvent;
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import com.example.examhelper.model.TimeRecord;
+import com.example.examhelper.repository.UserDayTotalRepository;
+import com.example.examhelper.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DailyLeaderboardTest {
+
+    private static final String DATE = "2026-10-17";
+    private static final long NOW = 1_800_000_000_000L;
+
+    private final UserDayTotalRepository userDayTotalRepository = mock(UserDayTotalRepository.class);
+    private final ActiveSessionRegistry activeSessionRegistry = mock(ActiveSessionRegistry.class);
+    private DailyLeaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() {
+        leaderboard = new DailyLeaderboard(userDayTotalRepository, mock(UserRepository.class), activeSessionRegistry);
+        ReflectionTestUtils.setField(leaderboard, "maxDays", 3);
+        // Settled: 1 -> 100, 2 -> 50, 3 -> 50, 6 -> 50
+        when(userDayTotalRepository.findUserDurationsByDate(LocalDate.parse(DATE))).thenReturn(List.of(
+                new Object[]{1L, 100L}, new Object[]{2L, 50L}, new Object[]{3L, 50L}, new Object[]{6L, 50L}));
+        // Running: 2 for 60 (110 in all), 4 for 70 with nothing settled
+        when(activeSessionRegistry.countedStarts(DATE)).thenReturn(Map.of(2L, NOW - 60, 4L, NOW - 70));
+    }
+
+    @Test
+    void ranksRunningSessionsAsIfTheyEndedNow() {
+        assertThat(leaderboard.rankOf(DATE, 2L, NOW)).isEqualTo(1);
+        assertThat(leaderboard.rankOf(DATE, 1L, NOW)).isEqualTo(2);
+        assertThat(leaderboard.rankOf(DATE, 4L, NOW)).isEqualTo(3);
+        // Equal totals share a rank
+        assertThat(leaderboard.rankOf(DATE, 3L, NOW)).isEqualTo(4);
+        assertThat(leaderboard.rankOf(DATE, 6L, NOW)).isEqualTo(4);
+        assertThat(leaderboard.rankOf(DATE, 5L, NOW)).isEqualTo(-1);
+    }
+
+    @Test
+    void runningSessionsMoveUpAsTimePasses() {
+        // At NOW + 40, user 4 has 110 and overtakes user 1
+        assertThat(leaderboard.rankOf(DATE, 4L, NOW + 40)).isEqualTo(2);
+        assertThat(leaderboard.rankOf(DATE, 1L, NOW + 40)).isEqualTo(3);
+    }
+
+    @Test
+    void endedSessionLeavesOnlyItsRecord() {
+        leaderboard.rankOf(DATE, 1L, NOW);
+
+        // User 2 stops: the session goes and its 60 arrive as a record
+        when(activeSessionRegistry.countedStart(2L, DATE)).thenReturn(null);
+        leaderboard.onActiveSessionChanged(new ActiveSessionChangedEvent(2L));
+        TimeRecord record = new TimeRecord();
+        record.setUserId(2L);
+        record.setRecordDate(DATE);
+        record.setDuration(60L);
+        record.setCounted(true);
+        leaderboard.onRecordSaved(new TimeRecordSavedEvent(record));
+
+        assertThat(leaderboard.rankOf(DATE, 2L, NOW + 1_000)).isEqualTo(2);
+        // Still running, 70 + 1000
+        assertThat(leaderboard.rankOf(DATE, 4L, NOW + 1_000)).isEqualTo(1);
+        assertThat(leaderboard.rankOf(DATE, 1L, NOW + 1_000)).isEqualTo(3);
+        assertThat(leaderboard.top(DATE, 2)).containsExactly(2L, 1L);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.examhelper.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogicalDayTest {
+
+    @Test
+    void dayTurnsOverAtFourInTheMorning() {
+        assertThat(LogicalDay.of(at(2026, 10, 17, 3, 59, 59, 999))).isEqualTo("2026-10-16");
+        assertThat(LogicalDay.of(at(2026, 10, 17, 4, 0, 0, 0))).isEqualTo("2026-10-17");
+        assertThat(LogicalDay.dateOf(at(2026, 10, 17, 0, 0, 0, 0))).isEqualTo(LocalDate.of(2026, 10, 16));
+        assertThat(LogicalDay.dateOf(at(2026, 10, 17, 23, 59, 59, 999))).isEqualTo(LocalDate.of(2026, 10, 17));
+    }
+
+    @Test
+    void boundaryCrossesMonthAndYear() {
+        assertThat(LogicalDay.of(at(2027, 1, 1, 1, 30, 0, 0))).isEqualTo("2026-12-31");
+        assertThat(LogicalDay.of(at(2026, 3, 1, 3, 0, 0, 0))).isEqualTo("2026-02-28");
+    }
+
+    @Test
+    void startOfIsFourInTheMorningOfTheLogicalDay() {
+        long start = at(2026, 10, 16, 4, 0, 0, 0);
+        assertThat(LogicalDay.startOf(at(2026, 10, 17, 3, 59, 59, 999))).isEqualTo(start);
+        assertThat(LogicalDay.startOf(at(2026, 10, 16, 4, 0, 0, 0))).isEqualTo(start);
+        assertThat(LogicalDay.startOf(at(2026, 10, 16, 12, 0, 0, 0))).isEqualTo(start);
+        assertThat(LogicalDay.startOf(at(2026, 10, 17, 4, 0, 0, 0))).isEqualTo(at(2026, 10, 17, 4, 0, 0, 0));
+    }
+
+    // LogicalDay works in the system zone
+    private static long at(int year, int month, int day, int hour, int minute, int second, int millis) {
+        return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
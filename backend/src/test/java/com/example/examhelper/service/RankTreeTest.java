@@ -0,0 +1,64 @@
+package com.example.examhelper.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RankTreeTest {
+
+    @Test
+    void ordersByTotalDescendingThenUserId() {
+        RankTree tree = new RankTree();
+        tree.insert(3, 50);
+        tree.insert(1, 100);
+        tree.insert(4, 50);
+        tree.insert(2, 75);
+
+        assertThat(tree.first(10)).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(tree.first(2)).containsExactly(1L, 2L);
+        assertThat(tree.size()).isEqualTo(4);
+    }
+
+    @Test
+    void equalTotalsShareTheCountAhead() {
+        RankTree tree = new RankTree();
+        tree.insert(1, 100);
+        tree.insert(2, 50);
+        tree.insert(3, 50);
+        tree.insert(4, 10);
+
+        // Long.MIN_VALUE as userId counts strictly larger totals only
+        assertThat(tree.countAhead(Long.MIN_VALUE, 50)).isEqualTo(1);
+        assertThat(tree.countAhead(Long.MIN_VALUE, 100)).isZero();
+        assertThat(tree.countAhead(Long.MIN_VALUE, 10)).isEqualTo(3);
+        assertThat(tree.countAhead(Long.MIN_VALUE, 5)).isEqualTo(4);
+        // With a userId, equal totals with a smaller id are ahead
+        assertThat(tree.countAhead(3, 50)).isEqualTo(2);
+    }
+
+    @Test
+    void removeTakesOutOnlyTheGivenEntry() {
+        RankTree tree = new RankTree();
+        tree.insert(1, 100);
+        tree.insert(2, 50);
+        tree.insert(3, 50);
+
+        tree.remove(2, 50);
+        tree.insert(2, 120);
+
+        assertThat(tree.first(10)).containsExactly(2L, 1L, 3L);
+        assertThat(tree.countAhead(Long.MIN_VALUE, 50)).isEqualTo(2);
+        assertThat(tree.size()).isEqualTo(3);
+    }
+
+    @Test
+    void negativeKeysOrderLikeAnyOther() {
+        RankTree tree = new RankTree();
+        tree.insert(1, -1_000);
+        tree.insert(2, -10);
+        tree.insert(3, 0);
+
+        assertThat(tree.first(3)).containsExactly(3L, 2L, 1L);
+        assertThat(tree.countAhead(Long.MIN_VALUE, -500)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.examhelper.service;
+
+import com.example.examhelper.event.TimeRecordSavedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Recovery of the switch log on startup, against an in-memory stand-in for the JDBC calls
+class SwitchWriteBehindTest {
+
+    private static final long T0 = 1_800_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    private FakeJdbcTemplate jdbcTemplate;
+    private final List<Object> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new FakeJdbcTemplate();
+    }
+
+    @Test
+    void replaysEntriesBeforeATruncatedTail() throws Exception {
+        writeSegment("switches-1.log",
+                line(1, 1, null, null, T0, 10L),
+                line(2, 1, 10L, T0, T0 + 60_000, 11L),
+                // Torn by the crash: no CRC
+                "3 1 11 " + (T0 + 60_000));
+
+        SwitchWriteBehind writeBehind = start();
+
+        assertThat(jdbcTemplate.userUpdates()).extracting(params -> params.get(3)).containsExactly(1L, 1L);
+        assertThat(jdbcTemplate.userUpdates()).extracting(params -> params.get(1)).containsExactly(10L, 11L);
+        assertThat(jdbcTemplate.checkpoints).containsExactly(2L);
+        assertThat(jdbcTemplate.batches("INSERT INTO time_records")).hasSize(1);
+        assertThat(events).filteredOn(TimeRecordSavedEvent.class::isInstance).hasSize(1);
+        assertThat(writeBehind.getFlushedSwitches()).isEqualTo(2);
+        assertThat(writeBehind.hasPending(1L)).isFalse();
+        assertThat(dir.resolve("switches-1.log")).doesNotExist();
+    }
+
+    @Test
+    void stopsAtAnEntryWithABadChecksum() throws Exception {
+        String corrupt = line(3, 2, null, null, T0, 20L).replaceFirst("^3 2 ", "3 7 ");
+        writeSegment("switches-1.log",
+                line(1, 1, null, null, T0, 10L),
+                line(2, 2, null, null, T0, 10L),
+                corrupt,
+                line(4, 1, 10L, T0, T0 + 5_000, 12L));
+
+        start();
+
+        assertThat(jdbcTemplate.userUpdates()).extracting(params -> params.get(3)).containsExactly(1L, 2L);
+        assertThat(jdbcTemplate.checkpoints).containsExactly(2L);
+        assertThat(dir.resolve("switches-1.log")).doesNotExist();
+    }
+
+    @Test
+    void skipsEntriesUpToTheCheckpoint() throws Exception {
+        jdbcTemplate.checkpoint = 2;
+        writeSegment("switches-1.log",
+                line(1, 1, null, null, T0, 10L),
+                line(2, 1, 10L, T0, T0 + 60_000, 11L));
+        writeSegment("switches-3.log",
+                line(3, 1, 11L, T0 + 60_000, T0 + 120_000, 12L));
+
+        start();
+
+        assertThat(jdbcTemplate.userUpdates()).hasSize(1);
+        assertThat(jdbcTemplate.userUpdates().get(0).get(1)).isEqualTo(12L);
+        assertThat(jdbcTemplate.checkpoints).containsExactly(3L);
+        assertThat(dir.resolve("switches-1.log")).doesNotExist();
+        assertThat(dir.resolve("switches-3.log")).doesNotExist();
+    }
+
+    @Test
+    void nothingPastTheCheckpointWritesNothing() throws Exception {
+        jdbcTemplate.checkpoint = 1;
+        writeSegment("switches-1.log", line(1, 1, null, null, T0, 10L));
+
+        start();
+
+        assertThat(jdbcTemplate.batches).isEmpty();
+        assertThat(jdbcTemplate.checkpoints).isEmpty();
+        assertThat(dir.resolve("switches-1.log")).doesNotExist();
+    }
+
+    @Test
+    void dropsStaleEntriesAndRecordsKeysOfAppliedOnes() throws Exception {
+        jdbcTemplate.staleUsers.add(2L);
+        writeSegment("switches-1.log",
+                line(1, 1, 10L, T0, T0 + 60_000, 11L, "key-1"),
+                line(2, 2, 10L, T0, T0 + 60_000, 11L, "key-2"));
+
+        start();
+
+        // Only user 1's switch ends a task, and only its key is recorded
+        assertThat(jdbcTemplate.batches("INSERT INTO time_records")).singleElement()
+                .satisfies(rows -> assertThat(rows).singleElement().satisfies(params -> assertThat(params.get(1)).isEqualTo(1L)));
+        assertThat(jdbcTemplate.batches("INSERT INTO switch_requests")).singleElement()
+                .satisfies(rows -> assertThat(rows).singleElement().satisfies(params -> assertThat(params.get(2)).isEqualTo("key-1")));
+        assertThat(jdbcTemplate.stateReads).containsExactly(2L);
+        assertThat(jdbcTemplate.checkpoints).containsExactly(2L);
+    }
+
+    private SwitchWriteBehind start() throws Exception {
+        TaskMetadataCache taskMetadataCache = mock(TaskMetadataCache.class);
+        when(taskMetadataCache.isCounted(anyLong())).thenReturn(true);
+        SwitchWriteBehind writeBehind = new SwitchWriteBehind(jdbcTemplate, mock(PlatformTransactionManager.class),
+                events::add, new TimeRecordFactory(taskMetadataCache), mock(ClusterNode.class));
+        ReflectionTestUtils.setField(writeBehind, "enabled", false);
+        ReflectionTestUtils.setField(writeBehind, "dir", dir.toString());
+        ReflectionTestUtils.setField(writeBehind, "maxDelay", Duration.ofMillis(500));
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 500);
+        ReflectionTestUtils.setField(writeBehind, "segmentSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(writeBehind, "fsync", false);
+        writeBehind.start();
+        return writeBehind;
+    }
+
+    private void writeSegment(String name, String... lines) throws Exception {
+        Files.writeString(dir.resolve(name), String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+    }
+
+    private static String line(long seq, long userId, Long previousTaskId, Long previousStartTime, long time, Long taskId) {
+        return line(seq, userId, previousTaskId, previousStartTime, time, taskId, null);
+    }
+
+    // Same format as SwitchWriteBehind#encode
+    private static String line(long seq, long userId, Long previousTaskId, Long previousStartTime, long time, Long taskId,
+                               String key) {
+        String body = seq + " " + userId + " " + orDash(previousTaskId) + " " + orDash(previousStartTime) + " "
+                + time + " " + orDash(taskId);
+        if (key != null) {
+            body += " " + Base64.getEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return body + " " + Long.toHexString(crc.getValue());
+    }
+
+    private static String orDash(Long value) {
+        return value == null ? "-" : value.toString();
+    }
+
+    // Answers the checkpoint queries and records every batch with the parameters its setter
+    // binds, by index
+    private static class FakeJdbcTemplate extends JdbcTemplate {
+
+        private record Batch(String sql, List<Map<Integer, Object>> rows) {
+        }
+
+        long checkpoint;
+        final Set<Long> staleUsers = new HashSet<>();
+        final List<Batch> batches = new ArrayList<>();
+        final List<Long> checkpoints = new ArrayList<>();
+        final List<Long> stateReads = new ArrayList<>();
+
+        List<List<Map<Integer, Object>>> batches(String prefix) {
+            return batches.stream().filter(batch -> batch.sql().startsWith(prefix)).map(Batch::rows).toList();
+        }
+
+        List<Map<Integer, Object>> userUpdates() {
+            return batches("UPDATE users").stream().flatMap(List::stream).toList();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            return (T) Integer.valueOf(1);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            return (List<T>) List.of(checkpoint);
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.startsWith("UPDATE write_behind_checkpoints")) {
+                checkpoints.add((Long) args[0]);
+            }
+            return 1;
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            stateReads.add((Long) args[0]);
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            List<Map<Integer, Object>> rows = new ArrayList<>();
+            int[] counts = new int[batchArgs.size()];
+            int i = 0;
+            for (T arg : batchArgs) {
+                Map<Integer, Object> params = new HashMap<>();
+                try {
+                    pss.setValues(capturing(params), arg);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                rows.add(params);
+                boolean stale = sql.startsWith("UPDATE users") && staleUsers.contains((Long) params.get(3));
+                counts[i++] = stale ? 0 : 1;
+            }
+            batches.add(new Batch(sql, rows));
+            return new int[][]{counts};
+        }
+
+        private static PreparedStatement capturing(Map<Integer, Object> params) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        if (method.getName().startsWith("set") && args != null && args.length >= 2) {
+                            params.put((Integer) args[0], method.getName().equals("setNull") ? null : args[1]);
+                        }
+                        return null;
+                    });
+        }
+    }
+}